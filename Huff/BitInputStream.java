@@ -1,4 +1,5 @@
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Reads bits-at-a-time where the number of bits is between 1 and 32.
@@ -8,6 +9,11 @@ import java.io.*;
  * that are constructed from a File support <code>reset()</code>. However,
  * if constructed from an <code>InputStream</code> an object cannot be reset.
  * <P>
+ * Input is read into a large byte array (or taken directly from a
+ * <code>ByteBuffer</code>) and moved into a 64-bit bit-buffer with a single
+ * long load per refill. <code>peekBits</code> and <code>skipBits</code> let
+ * table-driven decoders look ahead without consuming bits.
+ * <P>
  * Any exceptions generated are rethrown as <code>RuntimeException</code> objects
  * so client code does not have to catch or rethrow them. (Unless the extension
  * of <code>InputStream</code> requires throwing as another type of exception, e.g.,
@@ -21,19 +27,17 @@ import java.io.*;
 public class BitInputStream extends InputStream
 {
     private InputStream     myInput;
-    private int             myBitCount;
-    private int             myBuffer;
     private File            myFile;
-    
-    private static final int bmask[] = {
-        0x00, 0x01, 0x03, 0x07, 0x0f, 0x1f, 0x3f, 0x7f, 0xff,
-        0x1ff,0x3ff,0x7ff,0xfff,0x1fff,0x3fff,0x7fff,0xffff,
-        0x1ffff,0x3ffff,0x7ffff,0xfffff,0x1fffff,0x3fffff,
-        0x7fffff,0xffffff,0x1ffffff,0x3ffffff,0x7ffffff,
-        0xfffffff,0x1fffffff,0x3fffffff,0x7fffffff,0xffffffff
-    };
+    private ByteBuffer      mySource;    // set when reading from a ByteBuffer
+    private ByteBuffer      myBytes;     // bytes not yet moved into myBuffer
+    private int             myPosition;  // index of next byte in myBytes
+    private int             myLimit;     // index after last byte in myBytes
+    private long            myBuffer;    // look-ahead bits, left aligned
+    private int             myBitCount;  // number of valid bits in myBuffer
 
     private static final int BITS_PER_BYTE = 8;
+    private static final int BITS_PER_LONG = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
     /**
      * Construct a bit-at-a-time input stream from a file whose
      * name is supplied. 
@@ -69,15 +73,34 @@ public class BitInputStream extends InputStream
     public BitInputStream(InputStream in){
         myInput = in;
         myFile = null;
+        myBytes = ByteBuffer.allocate(BUFFER_SIZE);
+        myPosition = myLimit = 0;
+    }
+
+    /**
+     * Open a bit-at-a-time stream that reads the bytes between the position
+     * and the limit of a buffer, e.g., a memory-mapped file. The buffer itself
+     * is not modified and the stream can be reset to its start.
+     * @param buffer is the source of the bits
+     */
+    public BitInputStream(ByteBuffer buffer){
+        mySource = buffer;
+        myFile = null;
+        try {
+            reset();
+        } catch (IOException e) {
+            throw new RuntimeException("could not reset bit stream "+e);
+        }
     }
     
     /**
-     * Return true if the stream has been initialized from a File and
-     * is thus reset-able. If constructed from an InputStream it is not reset-able.
-     * @return true if stream can be reset (it has been constructed appropriately from a File).
+     * Return true if the stream has been initialized from a File or a ByteBuffer
+     * and is thus reset-able. If constructed from an InputStream it is not reset-able.
+     * @return true if stream can be reset (it has been constructed appropriately from a File
+     * or a ByteBuffer).
      */
     public boolean markSupported(){
-        return myFile != null;
+        return myFile != null || mySource != null;
     }
 
     /**
@@ -91,12 +114,21 @@ public class BitInputStream extends InputStream
         if (! markSupported()){
             throw new IOException("not resettable");
         }
-        try{
-            close();
-            myInput = new BufferedInputStream(new FileInputStream(myFile));
+        if (mySource != null){
+            myBytes = mySource.duplicate();
+            myPosition = mySource.position();
+            myLimit = mySource.limit();
         }
-        catch (FileNotFoundException fnf){
-            System.err.println("error opening " + myFile.getName() + " " + fnf);
+        else {
+            try{
+                close();
+                myInput = new FileInputStream(myFile);
+            }
+            catch (FileNotFoundException fnf){
+                System.err.println("error opening " + myFile.getName() + " " + fnf);
+            }
+            myBytes = ByteBuffer.allocate(BUFFER_SIZE);
+            myPosition = myLimit = 0;
         }
         myBuffer = myBitCount = 0;
     } 
@@ -118,6 +150,93 @@ public class BitInputStream extends InputStream
         }
     }
 
+    /**
+     * Move bytes into the bit-buffer until it holds more than 56 bits or
+     * the input is exhausted. When at least 8 bytes are available this is
+     * a single long load; bits loaded past the whole bytes counted are the
+     * next bits of the input, so leaving them in place is harmless.
+     */
+    private void refill() throws IOException
+    {
+        if (myLimit - myPosition < BITS_PER_LONG / BITS_PER_BYTE) {
+            fillBytes();
+        }
+        if (myLimit - myPosition >= BITS_PER_LONG / BITS_PER_BYTE) {
+            int bytes = (BITS_PER_LONG - 1 - myBitCount) / BITS_PER_BYTE;
+            myBuffer |= myBytes.getLong(myPosition) >>> myBitCount;
+            myPosition += bytes;
+            myBitCount += bytes * BITS_PER_BYTE;
+        }
+        else {
+            while (myBitCount <= BITS_PER_LONG - BITS_PER_BYTE && myPosition < myLimit) {
+                myBuffer |= (myBytes.get(myPosition++) & 0xffL)
+                            << (BITS_PER_LONG - BITS_PER_BYTE - myBitCount);
+                myBitCount += BITS_PER_BYTE;
+            }
+        }
+    }
+
+    /**
+     * Move the unread bytes to the front of the byte array and read from
+     * the wrapped stream until at least a long's worth of bytes is
+     * available or the stream ends.
+     */
+    private void fillBytes() throws IOException
+    {
+        if (myInput == null || mySource != null) {
+            return;
+        }
+        byte[] bytes = myBytes.array();
+        int remaining = myLimit - myPosition;
+        System.arraycopy(bytes, myPosition, bytes, 0, remaining);
+        myPosition = 0;
+        myLimit = remaining;
+        try{
+            while (myLimit < BITS_PER_LONG / BITS_PER_BYTE) {
+                int n = myInput.read(bytes, myLimit, bytes.length - myLimit);
+                if (n == -1) {
+                    break;
+                }
+                myLimit += n;
+            }
+        }
+        catch (IOException ioe) {
+            throw new IOException("bitreading trouble "+ioe);
+        }
+    }
+
+    /**
+     * Returns the next howManyBits bits as rightmost bits of the returned
+     * value without consuming them. If fewer bits are left the missing
+     * bits are zero.
+     * @param howManyBits is the number of bits to look at (1-56)
+     * @return the next bits of the stream
+     */
+    public int peekBits(int howManyBits) throws IOException
+    {
+        if (myBitCount < howManyBits) {
+            refill();
+        }
+        return (int) (myBuffer >>> (BITS_PER_LONG - howManyBits));
+    }
+
+    /**
+     * Consume bits, typically after looking at them with <code>peekBits</code>.
+     * @param howManyBits is the number of bits to skip (0-56)
+     * @throws IOException if fewer than howManyBits bits are left
+     */
+    public void skipBits(int howManyBits) throws IOException
+    {
+        if (myBitCount < howManyBits) {
+            refill();
+            if (myBitCount < howManyBits) {
+                throw new IOException("bitreading trouble, not enough bits left");
+            }
+        }
+        myBuffer <<= howManyBits;
+        myBitCount -= howManyBits;
+    }
+
     /**
      * Returns the number of bits requested as rightmost bits in
      * returned value, returns -1 if not enough bits available to
@@ -130,33 +249,28 @@ public class BitInputStream extends InputStream
 
     public int read(int howManyBits) throws IOException
     {
-        int retval = 0;
-        if (myInput == null){
-            return -1;
-        }
-        
-        while (howManyBits > myBitCount){
-            retval |= ( myBuffer << (howManyBits - myBitCount) );
-            howManyBits -= myBitCount;
-            try{
-                if ( (myBuffer = myInput.read()) == -1) {
-                    return -1;
-                }
+        if (myBitCount < howManyBits) {
+            refill();
+            if (myBitCount < howManyBits) {
+                return -1;
             }
-            catch (IOException ioe) {
-                throw new IOException("bitreading trouble "+ioe);
-            }
-            myBitCount = BITS_PER_BYTE;
-        }
-
-        if (howManyBits > 0){
-            retval |= myBuffer >> (myBitCount - howManyBits);
-            myBuffer &= bmask[myBitCount - howManyBits];
-            myBitCount -= howManyBits;
         }
+        int retval = (int) (myBuffer >>> (BITS_PER_LONG - howManyBits));
+        myBuffer <<= howManyBits;
+        myBitCount -= howManyBits;
         return retval;
     }
 
+    /**
+     * Returns the number of bits of the current byte that have not been
+     * read yet, zero when the stream is positioned on a byte boundary.
+     * Reading exactly this many bits byte-aligns the stream.
+     * @return number of bits left over from the last byte read
+     */
+    public int bitsBuffered() {
+        return myBitCount % BITS_PER_BYTE;
+    }
+
     /**
      * Required by classes extending InputStream, returns
      * the next byte from this stream as an int value.
@@ -165,7 +279,50 @@ public class BitInputStream extends InputStream
     public int read() throws IOException {
         return read(8);
     }
-}
-
-
 
+    /**
+     * Read up to len bytes into b. When the stream is byte aligned the
+     * bytes are copied in bulk, otherwise they are read 8 bits at a time.
+     * @param b is where the bytes are stored
+     * @param off is the index of the first byte stored
+     * @param len is the maximum number of bytes read
+     * @return the number of bytes read, -1 at the end of the stream
+     */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        if (bitsBuffered() != 0) {
+            int value;
+            while (n < len && (value = read(8)) != -1) {
+                b[off + n++] = (byte) value;
+            }
+            return n == 0 ? -1 : n;
+        }
+        // whole bytes already moved into the bit-buffer come first
+        while (n < len && myBitCount > 0) {
+            b[off + n++] = (byte) (myBuffer >>> (BITS_PER_LONG - BITS_PER_BYTE));
+            myBuffer <<= BITS_PER_BYTE;
+            myBitCount -= BITS_PER_BYTE;
+        }
+        if (myBitCount == 0) {
+            myBuffer = 0;
+        }
+        if (n < len && myPosition < myLimit) {
+            int count = Math.min(len - n, myLimit - myPosition);
+            ByteBuffer bytes = myBytes.duplicate();
+            bytes.position(myPosition);
+            bytes.get(b, off + n, count);
+            myPosition += count;
+            n += count;
+        }
+        if (n < len && myInput != null && mySource == null) {
+            int count = myInput.read(b, off + n, len - n);
+            if (count > 0) {
+                n += count;
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+}
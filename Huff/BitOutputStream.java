@@ -8,6 +8,10 @@
  * <P>
  * Updated for version 2.0 to extend java.io.OutputStream
  * <P>
+ * Bits are collected in a 64-bit accumulator, whole bytes are moved into
+ * an internal buffer and the buffer is written to the underlying stream
+ * in large chunks, so the underlying stream needs no buffering of its own.
+ * <P>
  * Any exceptions generated are rethrown as <code>RuntimeException</code> objects
  * so client code does not have to catch or rethrow them.
  * <P>
@@ -23,25 +27,50 @@ public class BitOutputStream extends OutputStream
     
 
     private OutputStream  myOutput;
-    private int           myBuffer;
-    private int           myBitsToGo;
-    
-    private static final int bmask[] = {
-        0x00, 0x01, 0x03, 0x07, 0x0f, 0x1f, 0x3f, 0x7f, 0xff,
-        0x1ff,0x3ff,0x7ff,0xfff,0x1fff,0x3fff,0x7fff,0xffff,
-        0x1ffff,0x3ffff,0x7ffff,0xfffff,0x1fffff,0x3fffff,
-        0x7fffff,0xffffff,0x1ffffff,0x3ffffff,0x7ffffff,
-        0xfffffff,0x1fffffff,0x3fffffff,0x7fffffff,0xffffffff
-    };
+    private long          myBuffer;     // pending bits, rightmost myBitCount are valid
+    private int           myBitCount;
+    private byte[]        myBytes;      // whole bytes not yet written to myOutput
+    private int           myByteCount;
 
     private static final int BITS_PER_BYTE = 8;
+    private static final int BITS_PER_INT = 32;
+    private static final int BITS_PER_LONG = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
 
     /**
      * Required by OutputStream subclasses, write the low
      * 8-bits to the underlying outputstream
      */
     public void write(int b) throws IOException {
-        myOutput.write(b);
+        write(BITS_PER_BYTE, b);
+    }
+
+    /**
+     * Write len bytes from b. When no bits are pending the bytes are
+     * copied straight into the buffer (or written through when there
+     * are many), otherwise they are written 8 bits at a time.
+     * @param b is the source of the bytes
+     * @param off is the index of the first byte written
+     * @param len is the number of bytes written
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        drain();
+        if (myBitCount != 0) {
+            for (int i = off; i < off + len; i++) {
+                write(BITS_PER_BYTE, b[i]);
+            }
+            return;
+        }
+        if (len >= myBytes.length) {
+            writeBuffer();
+            myOutput.write(b, off, len);
+            return;
+        }
+        if (len > myBytes.length - myByteCount) {
+            writeBuffer();
+        }
+        System.arraycopy(b, off, myBytes, myByteCount, len);
+        myByteCount += len;
     }
     
     /**
@@ -50,13 +79,26 @@ public class BitOutputStream extends OutputStream
      * @param out is the output stream to which bits are written
      */
     public BitOutputStream(OutputStream out){
+        this(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Create a stream that writes-through to out, keeping up to bufferSize
+     * bytes before writing them, e.g., a small buffer for a few bytes
+     * written into memory.
+     * @param out is the output stream to which bits are written
+     * @param bufferSize is the number of bytes buffered, at least 1
+     */
+    public BitOutputStream(OutputStream out, int bufferSize){
         myOutput = out;
-        initialize();
+        initialize(bufferSize);
     }
     
-    private void initialize(){
+    private void initialize(int bufferSize){
         myBuffer = 0;
-        myBitsToGo = BITS_PER_BYTE;
+        myBitCount = 0;
+        myBytes = new byte[bufferSize];
+        myByteCount = 0;
     }
     /**
      * Construct a bit-at-a-time output stream with specified file
@@ -68,7 +110,7 @@ public class BitOutputStream extends OutputStream
     public BitOutputStream(String filename)
     {
         try{
-            myOutput = new BufferedOutputStream(new FileOutputStream(filename)); 
+            myOutput = new FileOutputStream(filename); 
         }
         catch (FileNotFoundException fnf){
             throw new RuntimeException("could not create " + filename + " " + fnf);
@@ -76,27 +118,56 @@ public class BitOutputStream extends OutputStream
         catch(SecurityException se){
             throw new RuntimeException("security exception on write " + se);
         }
-        initialize();
+        initialize(BUFFER_SIZE);
     }
 
+    /**
+     * Move all complete bytes from the accumulator into the buffer,
+     * afterwards fewer than 8 bits are pending.
+     */
+    private void drain()
+    {
+        while (myBitCount >= BITS_PER_BYTE) {
+            if (myByteCount == myBytes.length) {
+                writeBuffer();
+            }
+            myBitCount -= BITS_PER_BYTE;
+            myBytes[myByteCount++] = (byte) (myBuffer >>> myBitCount);
+        }
+        myBuffer &= (1L << myBitCount) - 1;
+    }
 
     /**
-     * Flushes bits not yet written, must be called by client
-     * programs if <code>close</code> isn't called.
-     * @throws RuntimeException if there's a problem writing bits
+     * Write the buffered bytes to the underlying stream.
+     * @throws RuntimeException if there's a problem writing bytes
      */
-    public void flush()
+    private void writeBuffer()
     {
-        if (myBitsToGo != BITS_PER_BYTE) {
+        if (myByteCount > 0) {
             try{
-                write( (myBuffer << myBitsToGo) );
+                myOutput.write(myBytes, 0, myByteCount);
             }
             catch (java.io.IOException ioe){
-                throw new RuntimeException("error writing bits on flush " + ioe);
+                throw new RuntimeException("error writing bits " + ioe);
             }
-            myBuffer = 0;
-            myBitsToGo = BITS_PER_BYTE;
+            myByteCount = 0;
         }
+    }
+
+    /**
+     * Flushes bits not yet written, must be called by client
+     * programs if <code>close</code> isn't called.
+     * @throws RuntimeException if there's a problem writing bits
+     */
+    public void flush()
+    {
+        drain();
+        if (myBitCount != 0) {
+            // pad the last byte with zeros
+            write(BITS_PER_BYTE - myBitCount, 0);
+            drain();
+        }
+        writeBuffer();
                 
         try{
             myOutput.flush();    
@@ -132,27 +203,36 @@ public class BitOutputStream extends OutputStream
     
     public void write(int howManyBits, int value)
     {
-        value &= bmask[howManyBits];  // only right most bits valid
-
-        while (howManyBits >= myBitsToGo){
-            myBuffer = (myBuffer << myBitsToGo) |
-                       (value >> (howManyBits - myBitsToGo));
-            try{
-                write(myBuffer);    
-            }
-            catch (java.io.IOException ioe){
-                throw new RuntimeException("error writing bits " + ioe);
-            }
-
-            value &= bmask[howManyBits - myBitsToGo];
-            howManyBits -= myBitsToGo;
-            myBitsToGo = BITS_PER_BYTE;
-            myBuffer = 0;
+        if (myBitCount + howManyBits > BITS_PER_LONG) {
+            drain();
         }
-        
-        if (howManyBits > 0) {
-            myBuffer = (myBuffer << howManyBits) | value;
-            myBitsToGo -= howManyBits;
+        myBuffer = (myBuffer << howManyBits) | ((value & 0xffffffffL) & ((1L << howManyBits) - 1));
+        myBitCount += howManyBits;
+    }
+
+    /**
+     * Write specified number of bits from a long value, used for codes
+     * longer than 32 bits.
+     * @param howManyBits is number of bits to write (1-64)
+     * @param value is source of bits, rightmost bits are written
+     * @throws RuntimeException if there's an I/O problem writing bits
+     */
+    public void writeLong(int howManyBits, long value)
+    {
+        if (howManyBits > BITS_PER_INT) {
+            write(howManyBits - BITS_PER_INT, (int) (value >>> BITS_PER_INT));
+            howManyBits = BITS_PER_INT;
         }
+        write(howManyBits, (int) value);
+    }
+
+    /**
+     * Returns true if no partial byte is pending, so the next bit
+     * written starts a new byte.
+     * @return true if the stream is byte aligned
+     */
+    public boolean isByteAligned()
+    {
+        return myBitCount % BITS_PER_BYTE == 0;
     }
 }
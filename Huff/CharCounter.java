@@ -1,12 +1,25 @@
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 /**
  * A class that implements the ICharCounter interface
  * Methods in this class are used to count characters in HuffModel
+ * Files and buffers can also be counted in parallel: the data is split
+ * into chunks that are counted by ForkJoin tasks into private histograms,
+ * which are then added together.
  * @author Zifan Yang
  *
  */
 public class CharCounter implements ICharCounter {
+	private static final int BUFFER_SIZE = 1 << 16; // bytes read from a stream per call
+	private static final int CHUNK_SIZE = 1 << 20; // bytes counted by one task
+	private static final long MAP_SIZE = 1L << 30; // bytes of a file mapped at a time
 	private int list[];
 	public CharCounter(){
 		list = new int[IHuffHeader.ALPH_SIZE];
@@ -26,7 +39,7 @@ public class CharCounter implements ICharCounter {
     	}
     	return list[ch];
     }
-    
+
     /**
      * Initialize state by counting bits/chunks in a stream
      * @param stream is source of data
@@ -35,15 +48,176 @@ public class CharCounter implements ICharCounter {
      */
     public int countAll(InputStream stream) throws IOException{
     	clear();
-    	int bits = 0;
+    	byte[] buffer = new byte[BUFFER_SIZE];
+    	int n = 0;
     	int returnVal = 0;
-    	while((bits = stream.read()) != -1){
-    		returnVal += IHuffConstants.BITS_PER_WORD;
-    		add(bits);
+    	while((n = stream.read(buffer)) != -1){
+    		returnVal += n * IHuffConstants.BITS_PER_WORD;
+    		for (int i = 0; i < n; i++){
+    			list[buffer[i] & 0xff]++;
+    		}
     	}
     	return returnVal;
     }
-    
+
+    /**
+     * Initialize state by counting the chunks of a file in parallel.
+     * The file is memory-mapped a window at a time and each window is
+     * counted by ForkJoin tasks on the common pool.
+     * @param path is the file counted
+     * @return number of bits in the file
+     * @throws IOException if reading fails or a count does not fit in an int
+     */
+    public long countAll(Path path) throws IOException{
+    	long[] totals = new long[IHuffHeader.ALPH_SIZE];
+    	long size;
+    	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+    		size = channel.size();
+    		for (long start = 0; start < size; start += MAP_SIZE){
+    			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY,
+    					start, Math.min(MAP_SIZE, size - start));
+    			add(totals, countParallel(map));
+    		}
+    	}
+    	store(totals);
+    	return size * IHuffConstants.BITS_PER_WORD;
+    }
+
+    /**
+     * Initialize state by counting the chunks between the position and
+     * the limit of a buffer in parallel. The buffer is not modified.
+     * @param buffer is the source of data, heap or direct
+     * @return number of bits counted
+     * @throws IOException if a count does not fit in an int
+     */
+    public long countAll(ByteBuffer buffer) throws IOException{
+    	long[] totals = new long[IHuffHeader.ALPH_SIZE];
+    	add(totals, countParallel(buffer));
+    	store(totals);
+    	return (long) buffer.remaining() * IHuffConstants.BITS_PER_WORD;
+    }
+
+    /**
+     * Count the bytes between the position and the limit of a buffer in
+     * parallel without keeping the counts, for callers that code the
+     * buffer straight away. The buffer is not modified.
+     * @param buffer is the source of data, heap or direct
+     * @return the count of each byte
+     */
+    public static int[] count(ByteBuffer buffer){
+    	return countParallel(buffer);
+    }
+
+    /**
+     * Count the 16-bit symbols between the position and the limit of a
+     * buffer, each made of two bytes high byte first. An odd last byte is
+     * counted as a symbol whose low byte is zero. Only the symbols that
+     * occur need to be looked at afterwards, the counts of all others are 0.
+     * @param buffer is the source of data, heap or direct
+     * @return the count of each of the 1 << 16 symbols
+     */
+    public static int[] countWide(ByteBuffer buffer){
+    	int[] counts = new int[1 << 16];
+    	int i = buffer.position();
+    	int limit = buffer.limit();
+    	for (; i + 2 <= limit; i += 2){
+    		counts[buffer.getShort(i) & 0xffff]++;
+    	}
+    	if (i < limit){
+    		counts[(buffer.get(i) & 0xff) << 8]++;
+    	}
+    	return counts;
+    }
+
+    private static int[] countParallel(ByteBuffer buffer){
+    	CountTask task = new CountTask(buffer, buffer.position(), buffer.limit());
+    	if (buffer.remaining() <= CHUNK_SIZE){
+    		return task.compute(); // not worth handing to the pool
+    	}
+    	return ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private static void add(long[] totals, int[] counts){
+    	for (int i = 0; i < totals.length; i++){
+    		totals[i] += counts[i];
+    	}
+    }
+
+    /**
+     * Replace the counts with totals
+     */
+    private void store(long[] totals) throws IOException{
+    	for (int i = 0; i < IHuffHeader.ALPH_SIZE; i++){
+    		if (totals[i] > Integer.MAX_VALUE){
+    			throw new IOException("Character " + i + " occurs too often to count!");
+    		}
+    	}
+    	for (int i = 0; i < IHuffHeader.ALPH_SIZE; i++){
+    		list[i] = (int) totals[i];
+    	}
+    }
+
+    /**
+     * Counts the bytes in [from, to) of a buffer, splitting the range in
+     * half until it is at most CHUNK_SIZE bytes.
+     */
+    private static class CountTask extends RecursiveTask<int[]> {
+    	private static final long serialVersionUID = 1L;
+    	private final ByteBuffer buffer;
+    	private final int from;
+    	private final int to;
+
+    	CountTask(ByteBuffer buffer, int from, int to){
+    		this.buffer = buffer;
+    		this.from = from;
+    		this.to = to;
+    	}
+
+    	@Override
+    	protected int[] compute(){
+    		if (to - from <= CHUNK_SIZE){
+    			return count();
+    		}
+    		int middle = from + (to - from) / 2;
+    		CountTask right = new CountTask(buffer, middle, to);
+    		right.fork();
+    		int[] counts = new CountTask(buffer, from, middle).compute();
+    		int[] other = right.join();
+    		for (int i = 0; i < counts.length; i++){
+    			counts[i] += other[i];
+    		}
+    		return counts;
+    	}
+
+    	/**
+    	 * Count the range eight bytes per load, alternating between two
+    	 * histograms so consecutive equal bytes do not wait on each other
+    	 */
+    	private int[] count(){
+    		int[] even = new int[IHuffHeader.ALPH_SIZE];
+    		int[] odd = new int[IHuffHeader.ALPH_SIZE];
+    		int i = from;
+    		for (; i + 8 <= to; i += 8){
+    			long word = buffer.getLong(i);
+    			even[(int) (word >>> 56)]++;
+    			odd[(int) (word >>> 48) & 0xff]++;
+    			even[(int) (word >>> 40) & 0xff]++;
+    			odd[(int) (word >>> 32) & 0xff]++;
+    			even[(int) (word >>> 24) & 0xff]++;
+    			odd[(int) (word >>> 16) & 0xff]++;
+    			even[(int) (word >>> 8) & 0xff]++;
+    			odd[(int) word & 0xff]++;
+    		}
+    		for (; i < to; i++){
+    			even[buffer.get(i) & 0xff]++;
+    		}
+    		for (int j = 0; j < even.length; j++){
+    			even[j] += odd[j];
+    		}
+    		return even;
+    	}
+    }
+
     /**
      * Update state to record one occurrence of specified chunk/character.
      * @param i is the chunk being recorded
@@ -51,7 +225,7 @@ public class CharCounter implements ICharCounter {
     public void add(int i){
     	list[i] = list[i] + 1;
     }
-    
+
     /**
      * Set the value/count associated with a specific character/chunk.
      * @param i is the chunk/character whose count is specified
@@ -60,7 +234,7 @@ public class CharCounter implements ICharCounter {
     public void set(int i, int value){
     	list[i] = value;
     }
-    
+
     /**
      * All counts cleared to zero.
      */
@@ -1,72 +1,178 @@
-
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
-import javax.swing.ProgressMonitorInputStream;
 
+/**
+ * Compare two files, e.g., to verify that a file uncompresses to the
+ * original. Both files are memory-mapped a window at a time and each
+ * window is compared in parallel chunks with ByteBuffer.mismatch, which
+ * compares many bytes per instruction, rather than one byte per read.
+ * <P>
+ * Usage: <code>java Diff file1 file2</code> compares headlessly, prints the
+ * first differing offset and the throughput and exits with 0 if the files
+ * are the same, 1 if they differ and 2 on errors. Without arguments two
+ * files are chosen in a file chooser.
+ */
 public class Diff
 {
     protected static JFileChooser ourChooser = new JFileChooser(".");
-    
+
+    private static final long MAP_SIZE = 1L << 30;  // bytes of each file mapped at a time
+    private static final int CHUNK_SIZE = 1 << 20;  // bytes compared by one task
+
     public Diff(){
-        
+
     }
-    
+
     public static void showMessage(String message){
         JOptionPane.showMessageDialog(null, message,"Diff Output",
                 JOptionPane.INFORMATION_MESSAGE);
     }
+
+    /**
+     * Returns the offset of the first byte at which two files differ. If
+     * one file is the start of the other, that is the length of the
+     * shorter one.
+     * @param file1 is the first file
+     * @param file2 is the second file
+     * @return the offset of the first difference, -1 if the files are the same
+     * @throws IOException if a file cannot be read
+     */
+    public static long firstDifference(File file1, File file2) throws IOException {
+        try (FileChannel in1 = FileChannel.open(file1.toPath(), StandardOpenOption.READ);
+             FileChannel in2 = FileChannel.open(file2.toPath(), StandardOpenOption.READ)){
+            long size = Math.min(in1.size(), in2.size());
+            for (long start = 0; start < size; start += MAP_SIZE){
+                long length = Math.min(MAP_SIZE, size - start);
+                ByteBuffer map1 = in1.map(FileChannel.MapMode.READ_ONLY, start, length);
+                ByteBuffer map2 = in2.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int offset = ForkJoinPool.commonPool().invoke(
+                        new MismatchTask(map1, map2, 0, (int) length));
+                if (offset >= 0){
+                    return start + offset;
+                }
+            }
+            return in1.size() == in2.size() ? -1 : size;
+        }
+    }
+
+    /**
+     * Finds the first mismatch in [from, to) of two buffers, splitting the
+     * range in half until it is at most CHUNK_SIZE bytes. The left half is
+     * compared while the right half runs on another thread, and the right
+     * half is abandoned if the left half already differs.
+     */
+    private static class MismatchTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer1;
+        private final ByteBuffer buffer2;
+        private final int from;
+        private final int to;
+
+        MismatchTask(ByteBuffer buffer1, ByteBuffer buffer2, int from, int to){
+            this.buffer1 = buffer1;
+            this.buffer2 = buffer2;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute(){
+            if (to - from <= CHUNK_SIZE){
+                int i = buffer1.slice(from, to - from).mismatch(buffer2.slice(from, to - from));
+                return i < 0 ? -1 : from + i;
+            }
+            int middle = from + (to - from) / 2;
+            MismatchTask right = new MismatchTask(buffer1, buffer2, middle, to);
+            right.fork();
+            int left = new MismatchTask(buffer1, buffer2, from, middle).compute();
+            if (left >= 0){
+                right.cancel(false);
+                return left;
+            }
+            return right.join();
+        }
+    }
+
     public static boolean doDiffer(File[] files){
         try {
-            ProgressMonitorInputStream stream1 = 
-                new ProgressMonitorInputStream(
-                        null,
-                        "reading "+files[0].getName(),
-                        new FileInputStream(files[0]));
-            ProgressMonitorInputStream stream2 = 
-                new ProgressMonitorInputStream(
-                        null,
-                        "reading "+files[1].getName(),
-                        new FileInputStream(files[1]));
-            BitInputStream b1 = new BitInputStream(stream1);
-            BitInputStream b2 = new BitInputStream(stream2);
-            while (true) {
-                int x = b1.read(8);
-                int y = b2.read(8);
-                if (x == -1) return y == -1;
-                if (y == -1) return false;
-                if (x != y) return false;
-            }
-            // never reached
-            
+            return firstDifference(files[0], files[1]) < 0;
         } catch (IOException e) {
             e.printStackTrace();
             JOptionPane.showMessageDialog(null,"trouble reading","Diff Error",
                     JOptionPane.ERROR_MESSAGE);
             return false;
         }
-      
+
     }
+
+    /**
+     * Compare two files without a user interface, printing where they
+     * differ and how fast they were compared
+     * @return 0 if the files are the same, 1 if they differ, 2 on errors
+     */
+    private static int compare(File file1, File file2){
+        long start = System.nanoTime();
+        long offset;
+        try {
+            offset = firstDifference(file1, file2);
+        } catch (IOException e) {
+            System.err.println("trouble reading: " + e.getMessage());
+            return 2;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long compared = offset < 0 ? file1.length() : offset;
+        if (offset < 0){
+            System.out.println("Files are the same");
+        }
+        else {
+            System.out.println("Files DIFFER at byte " + offset);
+        }
+        System.out.printf("compared %d bytes of each file in %.3f s, %.1f MB/s%n", compared, seconds,
+                compared / 1e6 / Math.max(seconds, 1e-9));
+        return offset < 0 ? 0 : 1;
+    }
+
     public static void main(String[] args){
+        if (args.length == 2){
+            System.exit(compare(new File(args[0]), new File(args[1])));
+        }
+        if (args.length != 0){
+            System.err.println("Usage: java Diff [file1 file2]");
+            System.exit(2);
+        }
         ourChooser.setMultiSelectionEnabled(true);
         ourChooser.setDialogTitle("Diff: choose two files");
         int retval = ourChooser.showOpenDialog(null);
         if (retval == JFileChooser.APPROVE_OPTION){
                 File[] files = ourChooser.getSelectedFiles();
                 if (files.length != 2){
-                    JOptionPane.showMessageDialog(null,"Choose Two Files", 
+                    JOptionPane.showMessageDialog(null,"Choose Two Files",
                             "Diff Error",JOptionPane.ERROR_MESSAGE);
                 }
                 else {
-                    if (doDiffer(files)){
-                        showMessage("Files are the same");
-                    }
-                    else {
-                        showMessage("Files DIFFER somewhere");
+                    try {
+                        long offset = firstDifference(files[0], files[1]);
+                        if (offset < 0){
+                            showMessage("Files are the same");
+                        }
+                        else {
+                            showMessage("Files DIFFER at byte " + offset);
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        JOptionPane.showMessageDialog(null,"trouble reading","Diff Error",
+                                JOptionPane.ERROR_MESSAGE);
                     }
                 }
-        }           
+        }
         System.exit(0);
     }
-}
\ No newline at end of file
+}
@@ -2,12 +2,17 @@
 /**
  * Main/launch program for Huff assignment. A better
  * comment than this is warranted.
+ * With arguments the files are compressed without the viewer, see HuffBatch.
  * @author Zifan Yang
  *
  */
 public class Huff {
 
-    public static void main(String[] args){
+    public static void main(String[] args) throws java.io.IOException{
+        if (args.length > 0){
+            HuffBatch.main(args);
+            return;
+        }
         HuffViewer sv = new HuffViewer("Huffing Coding");
         IHuffModel hm = new HuffModel();
         sv.setModel(hm);    
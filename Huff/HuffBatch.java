@@ -0,0 +1,294 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+/**
+ * Headless driver that compresses or uncompresses many files with
+ * HuffModel, one file per task on a fixed thread pool. Files are started
+ * largest first so that a big file does not start last and keep the run
+ * going after every other thread is idle. When all files are done the
+ * time of each file and the totals are printed, along with how often the
+ * coding tables were found in HuffTableCache.
+ * <P>
+ * Usage: <code>java HuffBatch [-d] [-c] [-f] [-s] [-i] [-x] [-t threads] [-b blockSize]
+ * [-l maxCodeLength] [-w symbolBits] [-o directory] file-or-directory ...</code>
+ * <P>
+ * Directories are searched recursively. Compressing writes name.hf and skips
+ * files that are already .hf, uncompressing (-d) reads the .hf files and
+ * writes name.unhf, the same names the viewer suggests. With -o the files
+ * are written under the given directory instead of next to their input.
+ * With -s a file that would not shrink is stored instead of failing.
+ * With -l the compression lost to the code length limit is printed too.
+ * -i writes interleaved blocks, -x order-1 context blocks and -w 16 16-bit
+ * symbols, they only apply together with -b.
+ * @author Zifan Yang
+ *
+ */
+public class HuffBatch {
+	private static final double MB = 1024.0 * 1024.0;
+	private static final int BITS_PER_BYTE = 8;
+	private static final String HUFF_SUFFIX = ".hf";
+	private static final String UNHUFF_SUFFIX = ".unhf";
+	private boolean uncompress; // uncompress instead of compress
+	private boolean canonical; // write canonical headers
+	private boolean force; // keep compressed files that are larger than their input
+	private boolean stored; // store files that do not compress
+	private boolean interleaved; // write interleaved blocks
+	private boolean contexts; // write order-1 context blocks
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int blockSize; // 0 to write single-block files
+	private int maxLength; // longest code allowed, 0 for no limit
+	private int symbolBits = 8; // width of the symbols of block files
+	private Path outDir; // null to write next to the input
+
+	/**
+	 * The outcome of one file
+	 */
+	private static class Result {
+		Path input;
+		long inSize;
+		long outSize;
+		long nanos;
+		long limitCost; // bits added by the code length limit
+		String error; // null if the file was done
+	}
+
+	/**
+	 * Parse the options, returns the index of the first path
+	 */
+	private int parse(String[] args){
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); i++){
+			switch (args[i]){
+			case "-d": uncompress = true; break;
+			case "-c": canonical = true; break;
+			case "-f": force = true; break;
+			case "-s": stored = true; break;
+			case "-i": interleaved = true; break;
+			case "-x": contexts = true; break;
+			case "-t": threads = Integer.parseInt(args[++i]); break;
+			case "-b": blockSize = Integer.parseInt(args[++i]); break;
+			case "-l": maxLength = Integer.parseInt(args[++i]); break;
+			case "-w": symbolBits = Integer.parseInt(args[++i]); break;
+			case "-o": outDir = new File(args[++i]).toPath(); break;
+			default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (threads <= 0 || blockSize < 0 || blockSize > HuffBlockCompressor.MAX_BLOCK_SIZE){
+			throw new IllegalArgumentException("Thread count must be positive and block size 0 to "
+					+ HuffBlockCompressor.MAX_BLOCK_SIZE + "!");
+		}
+		// fail before any file is written
+		HuffBlockCompressor settings = new HuffBlockCompressor();
+		settings.setSymbolBits(symbolBits);
+		settings.setMaxCodeLength(maxLength);
+		return i;
+	}
+
+	/**
+	 * Collect the files to be done, a directory contributes the files below
+	 * it that match the mode, a file named directly is always included.
+	 */
+	private List<Path> collect(String[] args, int first) throws IOException{
+		List<Path> files = new ArrayList<Path>();
+		for (int i = first; i < args.length; i++){
+			Path path = new File(args[i]).toPath();
+			if (!Files.isDirectory(path)){
+				files.add(path);
+				continue;
+			}
+			try (Stream<Path> walk = Files.walk(path)){
+				walk.filter(Files::isRegularFile)
+					.filter(p -> p.getFileName().toString().endsWith(HUFF_SUFFIX) == uncompress)
+					.forEach(files::add);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Returns the file written for input
+	 */
+	private Path output(Path input, Path root){
+		String name = input.getFileName() + (uncompress ? UNHUFF_SUFFIX : HUFF_SUFFIX);
+		if (outDir == null){
+			return input.resolveSibling(name);
+		}
+		Path parent = root == null ? null : root.relativize(input).getParent();
+		return parent == null ? outDir.resolve(name) : outDir.resolve(parent).resolve(name);
+	}
+
+	/**
+	 * Compress or uncompress one file with a model of its own
+	 */
+	private Result run(Path input, Path output) throws IOException{
+		Result result = new Result();
+		result.input = input;
+		result.inSize = Files.size(input);
+		long start = System.nanoTime();
+		try{
+			if (output.getParent() != null){
+				Files.createDirectories(output.getParent());
+			}
+			HuffModel model = new HuffModel();
+			model.setCanonical(canonical);
+			model.setBlocks(blockSize, 1); // the pool already keeps every thread busy
+			model.setMaxCodeLength(maxLength);
+			model.setInterleaved(interleaved);
+			model.setSymbolBits(symbolBits);
+			model.setContexts(contexts);
+			model.setStored(stored);
+			if (uncompress){
+				model.uncompress(input.toFile(), output.toFile());
+			}
+			else{
+				if (blockSize == 0){
+					model.initialize(input.toFile());
+				}
+				model.write(input.toFile(), output.toFile(), force);
+				result.limitCost = model.getLimitCost();
+			}
+			result.outSize = Files.size(output);
+		}
+		catch (IOException | RuntimeException e){
+			result.error = e.getMessage();
+			if (!uncompress){
+				Files.deleteIfExists(output); // e.g., compression did not save space
+			}
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Do every file largest first on the pool and print the results
+	 */
+	private void runAll(String[] args, int first) throws IOException{
+		List<Path> files = collect(args, first);
+		final List<Path> roots = new ArrayList<Path>();
+		for (int i = first; i < args.length; i++){
+			roots.add(new File(args[i]).toPath());
+		}
+		final List<Long> sizes = new ArrayList<Long>();
+		for (Path file : files){
+			sizes.add(Files.size(file));
+		}
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < files.size(); i++){
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b){
+				return Long.compare(sizes.get(b), sizes.get(a));
+			}
+		});
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<Future<Result>>(files.size());
+		long start = System.nanoTime();
+		try{
+			for (int i : order){
+				final Path input = files.get(i);
+				final Path output = output(input, rootOf(input, roots));
+				futures.add(pool.submit(new Callable<Result>(){
+					public Result call() throws IOException{
+						return run(input, output);
+					}
+				}));
+			}
+			List<Result> results = new ArrayList<Result>(futures.size());
+			for (Future<Result> future : futures){
+				results.add(take(future));
+			}
+			report(results, System.nanoTime() - start);
+		}
+		finally{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the directory named on the command line that contains input,
+	 * null if input was named directly
+	 */
+	private static Path rootOf(Path input, List<Path> roots){
+		for (Path root : roots){
+			if (Files.isDirectory(root) && input.startsWith(root)){
+				return root;
+			}
+		}
+		return null;
+	}
+
+	private static Result take(Future<Result> future) throws IOException{
+		try{
+			return future.get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted!");
+		}
+		catch (ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Print the time of each file in the order they were started, then the totals
+	 */
+	private void report(List<Result> results, long nanos){
+		long in = 0;
+		long out = 0;
+		long limitCost = 0;
+		int failed = 0;
+		for (Result result : results){
+			if (result.error != null){
+				failed++;
+				System.out.printf("%s: FAILED %s%n", result.input, result.error);
+				continue;
+			}
+			in += result.inSize;
+			out += result.outSize;
+			limitCost += result.limitCost;
+			System.out.printf("%s: %d -> %d bytes, %.1f ms, %.1f MB/s%n", result.input,
+					result.inSize, result.outSize, result.nanos / 1e6, rate(result.inSize, result.nanos));
+		}
+		long raw = uncompress ? out : in; // uncompressed bytes on either side
+		long packed = uncompress ? in : out;
+		System.out.printf("%d files, %d failed, %d threads%n", results.size(), failed, threads);
+		System.out.printf("%d -> %d bytes, ratio %.3f, %.2f s, %.1f MB/s%n", in, out,
+				raw == 0 ? 1.0 : (double) packed / raw, nanos / 1e9, rate(raw, nanos));
+		System.out.printf("table cache: encoders %d hits %d misses, decoders %d hits %d misses%n",
+				HuffTableCache.ENCODERS.getHits(), HuffTableCache.ENCODERS.getMisses(),
+				HuffTableCache.DECODERS.getHits(), HuffTableCache.DECODERS.getMisses());
+		if (maxLength > 0 && !uncompress && blockSize == 0){
+			System.out.printf("codes limited to %d bits: %d more bytes than unlimited codes (%.3f%%)%n",
+					maxLength, limitCost / BITS_PER_BYTE, out == 0 ? 0.0 : 100.0 * limitCost / BITS_PER_BYTE / out);
+		}
+	}
+
+	private static double rate(long bytes, long nanos){
+		return nanos == 0 ? 0 : bytes / MB / (nanos / 1e9);
+	}
+
+	public static void main(String[] args) throws IOException{
+		HuffBatch batch = new HuffBatch();
+		int first = batch.parse(args);
+		if (first == args.length){
+			System.err.println("Usage: java HuffBatch [-d] [-c] [-f] [-s] [-i] [-x] [-t threads] [-b blockSize] "
+					+ "[-l maxCodeLength] [-w symbolBits] [-o directory] file-or-directory ...");
+			System.exit(2);
+		}
+		batch.runAll(args, first);
+	}
+}
@@ -0,0 +1,753 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ * Compresses a file as a sequence of independent blocks so the blocks can
+ * be compressed concurrently. Each block has its own counts, canonical code
+ * length header and PSEUDO_EOF terminated bit stream, and is written as a
+ * frame in input order.
+ * <P>
+ * File layout, all ints and longs big-endian:
+ * <pre>
+ * BLOCK_MAGIC_NUMBER, block size
+ * for each block: compressed length, uncompressed length, payload
+ * 0 (end of blocks)
+ * index: for each block the long offset of its frame and its uncompressed length
+ * trailer: long offset of the index, number of blocks, BLOCK_INDEX_MAGIC_NUMBER
+ * </pre>
+ * The payload of a block is a canonical header written by HuffHeader
+ * followed by the codes, padded to a whole byte. An interleaved payload
+ * splits the block into four parts coded into separate byte-aligned
+ * streams that are decoded together:
+ * <pre>
+ * INTERLEAVED_MAGIC_NUMBER, header length, lengths of streams 0 to 2
+ * canonical header, stream 0, stream 1, stream 2, stream 3
+ * </pre>
+ * With 16-bit symbols the payload has a wide header and each code stands
+ * for two bytes, high byte first. A block of odd length ends with a symbol
+ * whose low byte is padding, the recorded length tells it apart. Such
+ * payloads are never interleaved. A context payload, written by
+ * HuffContextCoder and starting with CONTEXT_MAGIC_NUMBER, codes each byte
+ * with a table chosen by the byte before it. A block that coding does not
+ * shrink is stored instead, as STORED_MAGIC_NUMBER followed by its bytes.
+ * Reading a file one block
+ * at a time stops at the end marker, the index lets a file be decompressed
+ * in parallel with every block written straight to its place in the output.
+ * @author Zifan Yang
+ *
+ */
+public class HuffBlockCompressor implements IHuffConstants {
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	/**
+	 * Largest block size written, and accepted when reading, so a corrupt
+	 * file cannot make a reader allocate more than this per block
+	 */
+	public static final int MAX_BLOCK_SIZE = 1 << 26;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int FILE_HEADER_SIZE = 8; // magic number and block size
+	private static final int FRAME_HEADER_SIZE = 8; // compressed and uncompressed length
+	private static final int TRAILER_SIZE = 16;
+	private static final int INDEX_ENTRY_SIZE = 12;
+	private static final int INTERLEAVED_HEADER_SIZE = 20; // magic number and four lengths
+	private static final int STORED_HEADER_SIZE = 4; // magic number
+
+	private int blockSize;
+	private int threads;
+	private int maxLength; // longest code allowed, 0 for no limit
+	private boolean interleaved; // split the codes of each block across streams
+	private int symbolBits = BITS_PER_WORD; // 8 or 16
+	private boolean contexts; // code each byte with a table chosen by the previous byte
+
+	/**
+	 * Compress with DEFAULT_BLOCK_SIZE blocks and one thread per processor
+	 */
+	public HuffBlockCompressor(){
+		this(DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param blockSize is the number of input bytes per block
+	 * @param threads is the number of blocks compressed at the same time
+	 * @throws IllegalArgumentException if blockSize or threads is not
+	 * positive or blockSize is larger than MAX_BLOCK_SIZE
+	 */
+	public HuffBlockCompressor(int blockSize, int threads){
+		if (blockSize <= 0 || threads <= 0){
+			throw new IllegalArgumentException("Block size and thread count must be positive!");
+		}
+		if (blockSize > MAX_BLOCK_SIZE){
+			throw new IllegalArgumentException("Block size must be at most " + MAX_BLOCK_SIZE + "!");
+		}
+		this.blockSize = blockSize;
+		this.threads = threads;
+	}
+
+	/**
+	 * Limit the length of the codes of every block. A block of 16-bit
+	 * symbols using more symbols than the limit can code is limited to the
+	 * shortest length that codes them.
+	 * @param maxLength is the longest code allowed, 0 for no limit
+	 * @throws IllegalArgumentException if maxLength is not 0 or 9 to MAX_CODE_LENGTH
+	 */
+	public void setMaxCodeLength(int maxLength){
+		checkSettings(maxLength, symbolBits);
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Check a code length limit and symbol width together, so settings
+	 * fail when they are chosen whatever order they are chosen in.
+	 * @param maxLength is the longest code allowed, 0 for no limit
+	 * @param symbolBits is BITS_PER_WORD or 16
+	 * @throws IllegalArgumentException if either is not allowed
+	 */
+	public static void checkSettings(int maxLength, int symbolBits){
+		if (symbolBits != BITS_PER_WORD && symbolBits != MAX_SYMBOL_BITS){
+			throw new IllegalArgumentException("Symbols must be " + BITS_PER_WORD + " or "
+					+ MAX_SYMBOL_BITS + " bits!");
+		}
+		new HuffEncoder(1 << symbolBits).setMaxCodeLength(maxLength); // validates
+	}
+
+	/**
+	 * Choose the width of the symbols coded. 16-bit symbols suit data made
+	 * of 16-bit units, e.g., UTF-16 text or audio samples, and decode two
+	 * bytes per lookup, at the cost of a larger header per block.
+	 * @param symbolBits is BITS_PER_WORD or 16
+	 * @throws IllegalArgumentException for other widths
+	 */
+	public void setSymbolBits(int symbolBits){
+		checkSettings(maxLength, symbolBits);
+		this.symbolBits = symbolBits;
+	}
+
+	/**
+	 * Choose whether the codes of each block are split across
+	 * HuffTableDecoder.STREAMS interleaved streams, which decode faster at
+	 * the cost of a few bytes per block.
+	 * @param interleaved true to write interleaved payloads
+	 */
+	public void setInterleaved(boolean interleaved){
+		this.interleaved = interleaved;
+	}
+
+	/**
+	 * Choose whether each block is coded with order-1 context tables by
+	 * HuffContextCoder, which suits text and logs. Context blocks are never
+	 * interleaved, and the setting is ignored for 16-bit symbols.
+	 * @param contexts true to write context payloads
+	 */
+	public void setContexts(boolean contexts){
+		this.contexts = contexts;
+	}
+
+	/**
+	 * Compress a file. Blocks are mapped from the input and compressed on a
+	 * pool of worker threads, at most two blocks per thread are in flight
+	 * so memory use does not grow with the file size.
+	 * @param input is the file to be compressed
+	 * @param output is the file written
+	 * @return the number of bytes written
+	 * @throws IOException if the I/O fails
+	 */
+	public long compress(File input, File output) throws IOException{
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+		ArrayDeque<Integer> sizes = new ArrayDeque<Integer>();
+		ArrayList<Long> offsets = new ArrayList<Long>();
+		long written = FILE_HEADER_SIZE;
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					 new FileOutputStream(output), BUFFER_SIZE))){
+			out.writeInt(BLOCK_MAGIC_NUMBER);
+			out.writeInt(blockSize);
+			long size = in.size();
+			for (long start = 0; start < size; start += blockSize){
+				int length = (int) Math.min(blockSize, size - start);
+				final ByteBuffer block = in.map(FileChannel.MapMode.READ_ONLY, start, length);
+				pending.add(pool.submit(new Callable<byte[]>(){
+					public byte[] call() throws IOException{
+						return compressBlock(block);
+					}
+				}));
+				sizes.add(length);
+				while (pending.size() >= 2 * threads){
+					offsets.add(written);
+					written += writeFrame(out, take(pending.poll()), sizes.poll());
+				}
+			}
+			while (!pending.isEmpty()){
+				offsets.add(written);
+				written += writeFrame(out, take(pending.poll()), sizes.poll());
+			}
+			out.writeInt(0);
+			written += 4;
+			// index and trailer
+			for (int i = 0; i < offsets.size(); i++){
+				out.writeLong(offsets.get(i));
+				out.writeInt((int) Math.min(blockSize, size - (long) i * blockSize));
+			}
+			out.writeLong(written);
+			out.writeInt(offsets.size());
+			out.writeInt(BLOCK_INDEX_MAGIC_NUMBER);
+			written += (long) offsets.size() * INDEX_ENTRY_SIZE + TRAILER_SIZE;
+		}
+		finally{
+			pool.shutdownNow();
+		}
+		return written;
+	}
+
+	/**
+	 * Compress a stream in a single pass, e.g., a pipe or a socket that
+	 * cannot be read twice. Up to one block of input is buffered, compressed
+	 * and written as a frame before more input is read, so memory use does
+	 * not depend on the length of the input and each frame is flushed no
+	 * later than one block after its first byte was read. No index is
+	 * written, readers find the frames by following their lengths.
+	 * @param in is the data to be compressed
+	 * @param out is where the compressed data is written, it is not closed
+	 * @return the number of bytes written
+	 * @throws IOException if the I/O fails
+	 */
+	public long compress(InputStream in, OutputStream out) throws IOException{
+		DataOutputStream output = new DataOutputStream(out);
+		byte[] block = new byte[blockSize];
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(blockSize / 2 + 64);
+		long written = FILE_HEADER_SIZE;
+		output.writeInt(BLOCK_MAGIC_NUMBER);
+		output.writeInt(blockSize);
+		int length;
+		while ((length = fill(in, block)) > 0){
+			bytes.reset();
+			compressBlock(ByteBuffer.wrap(block, 0, length), bytes);
+			output.writeInt(bytes.size());
+			output.writeInt(length);
+			bytes.writeTo(output);
+			output.flush();
+			written += FRAME_HEADER_SIZE + bytes.size();
+		}
+		output.writeInt(0);
+		output.flush();
+		return written + 4;
+	}
+
+	/**
+	 * Read from in until block is full or in ends
+	 * @return the number of bytes read
+	 */
+	private static int fill(InputStream in, byte[] block) throws IOException{
+		int length = 0;
+		int n;
+		while (length < block.length && (n = in.read(block, length, block.length - length)) != -1){
+			length += n;
+		}
+		return length;
+	}
+
+	/**
+	 * Decompress a block file, decoding blocks concurrently on the worker
+	 * pool. Every block is written straight to its final position in the
+	 * output file, found from the index at the end of the input. Files
+	 * without an index have their frame headers scanned instead.
+	 * @param input is the compressed file
+	 * @param output is the file where the uncompressed data is written
+	 * @throws IOException if the data is bad or the I/O fails
+	 */
+	public void decompress(File input, File output) throws IOException{
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+			 RandomAccessFile file = new RandomAccessFile(output, "rw")){
+			ByteBuffer start = read(in, 0, FILE_HEADER_SIZE);
+			if (start.getInt() != BLOCK_MAGIC_NUMBER){
+				throw new IOException("Magic number incorrect!");
+			}
+			int blockSize = start.getInt();
+			if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE){
+				throw new IOException("Bad block frame!");
+			}
+			Index index = readIndex(in, blockSize);
+			long total = 0;
+			for (int size : index.sizes){
+				total += size;
+			}
+			file.setLength(total);
+			final FileChannel source = in;
+			final FileChannel target = file.getChannel();
+			ArrayList<Future<Object>> done = new ArrayList<Future<Object>>();
+			long position = 0;
+			for (int i = 0; i < index.frames.length; i++){
+				final long frame = index.frames[i];
+				final int size = index.sizes[i];
+				final long offset = position;
+				done.add(pool.submit(new Callable<Object>(){
+					public Object call() throws IOException{
+						decompressFrame(source, frame, size, target, offset);
+						return null;
+					}
+				}));
+				position += size;
+			}
+			for (Future<Object> future : done){
+				take(future);
+			}
+		}
+		finally{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Frame offsets and uncompressed sizes of the blocks of a file
+	 */
+	private static class Index {
+		long[] frames;
+		int[] sizes;
+
+		Index(int count){
+			frames = new long[count];
+			sizes = new int[count];
+		}
+	}
+
+	/**
+	 * Read the index at the end of a file, or build it by following the
+	 * frame lengths from the first frame if the file has no index.
+	 * @throws IOException if a block is larger than the file's block size
+	 */
+	private static Index readIndex(FileChannel in, int fileBlockSize) throws IOException{
+		long size = in.size();
+		Index result = null;
+		if (size >= FILE_HEADER_SIZE + 4 + TRAILER_SIZE){
+			ByteBuffer trailer = read(in, size - TRAILER_SIZE, TRAILER_SIZE);
+			long indexOffset = trailer.getLong();
+			int count = trailer.getInt();
+			if (trailer.getInt() == BLOCK_INDEX_MAGIC_NUMBER && count >= 0 && indexOffset >= FILE_HEADER_SIZE
+					&& indexOffset + (long) count * INDEX_ENTRY_SIZE + TRAILER_SIZE == size){
+				ByteBuffer index = read(in, indexOffset, count * INDEX_ENTRY_SIZE);
+				result = new Index(count);
+				for (int i = 0; i < count; i++){
+					result.frames[i] = index.getLong();
+					result.sizes[i] = index.getInt();
+				}
+			}
+		}
+		if (result == null){
+			ArrayList<Long> frames = new ArrayList<Long>();
+			ArrayList<Integer> sizes = new ArrayList<Integer>();
+			long position = FILE_HEADER_SIZE;
+			ByteBuffer frame;
+			while ((frame = read(in, position, 4)).getInt() != 0){
+				frame = read(in, position, FRAME_HEADER_SIZE);
+				int compressed = frame.getInt();
+				int blockLength = frame.getInt();
+				if (compressed < 0 || blockLength < 0 || blockLength > fileBlockSize
+						|| compressed > blockLength + STORED_HEADER_SIZE){
+					throw new IOException("Bad block frame!");
+				}
+				frames.add(position);
+				sizes.add(blockLength);
+				position += FRAME_HEADER_SIZE + (long) compressed;
+			}
+			result = new Index(frames.size());
+			for (int i = 0; i < frames.size(); i++){
+				result.frames[i] = frames.get(i);
+				result.sizes[i] = sizes.get(i);
+			}
+		}
+		for (int blockLength : result.sizes){
+			if (blockLength < 0 || blockLength > fileBlockSize){
+				throw new IOException("Bad block frame!");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Decompress the frame at position frame of in and write it at offset of out
+	 */
+	private static void decompressFrame(FileChannel in, long frame, int size, FileChannel out, long offset)
+			throws IOException{
+		ByteBuffer header = read(in, frame, FRAME_HEADER_SIZE);
+		int compressed = header.getInt();
+		if (compressed <= 0 || compressed > size + STORED_HEADER_SIZE || header.getInt() != size
+				|| frame + FRAME_HEADER_SIZE + compressed > in.size()){
+			throw new IOException("Bad block frame!");
+		}
+		ByteBuffer payload = in.map(FileChannel.MapMode.READ_ONLY, frame + FRAME_HEADER_SIZE, compressed);
+		byte[] block = new byte[size];
+		decompressBlock(payload, block, 0, size);
+		ByteBuffer bytes = ByteBuffer.wrap(block);
+		while (bytes.hasRemaining()){
+			out.write(bytes, offset + bytes.position());
+		}
+	}
+
+	/**
+	 * Read length bytes at position of a channel
+	 * @throws IOException if the channel ends first
+	 */
+	private static ByteBuffer read(FileChannel in, long position, int length) throws IOException{
+		ByteBuffer bytes = ByteBuffer.allocate(length);
+		while (bytes.hasRemaining()){
+			if (in.read(bytes, position + bytes.position()) == -1){
+				throw new IOException("Compressed blocks end too soon!");
+			}
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	/**
+	 * Wait for a block to be compressed or decompressed
+	 */
+	private static <T> T take(Future<T> future) throws IOException{
+		try{
+			return future.get();
+		}
+		catch (ExecutionException e){
+			throw new IOException("Block failed: " + e.getCause(), e.getCause());
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Block interrupted!");
+		}
+	}
+
+	/**
+	 * Write one block frame
+	 * @return the number of bytes written
+	 */
+	private static int writeFrame(DataOutputStream out, byte[] payload, int size) throws IOException{
+		out.writeInt(payload.length);
+		out.writeInt(size);
+		out.write(payload);
+		return FRAME_HEADER_SIZE + payload.length;
+	}
+
+	/**
+	 * Compress one block on its own: count, build a tree, write a canonical
+	 * header and the codes. Only reads the settings of this compressor so
+	 * blocks can be compressed on any thread.
+	 * @param block holds the bytes between its position and limit
+	 * @return the compressed payload
+	 * @throws IOException if a count is too large
+	 */
+	byte[] compressBlock(ByteBuffer block) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(block.remaining() / 2 + 64);
+		compressBlock(block, bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Compress one block on its own into bytes, which must be empty. The
+	 * block is stored if its payload would be larger than a stored one.
+	 */
+	private void compressBlock(ByteBuffer block, ByteArrayOutputStream bytes) throws IOException{
+		codeBlock(block, bytes);
+		if (bytes.size() > block.remaining() + STORED_HEADER_SIZE){
+			bytes.reset();
+			writeStored(block, bytes);
+		}
+	}
+
+	/**
+	 * Write the coded payload of a block into bytes, or a stored payload if
+	 * its size computed from the counts and code lengths shows coding does
+	 * not help, so the codes are not written for nothing
+	 */
+	private void codeBlock(ByteBuffer block, ByteArrayOutputStream bytes) throws IOException{
+		if (symbolBits != BITS_PER_WORD){
+			writeWide(block, bytes);
+			return;
+		}
+		if (contexts){
+			new HuffContextCoder(maxLength).compress(block, bytes);
+			return;
+		}
+		CharCounter count = new CharCounter();
+		count.countAll(block);
+		int[] counts = new int[ALPH_SIZE];
+		for (int i = 0; i < ALPH_SIZE; i++){
+			counts[i] = count.getCount(i);
+		}
+		HuffEncoder encoder = HuffTableCache.encoder(counts, true, maxLength);
+		if (interleaved){
+			writeInterleaved(block, encoder, bytes);
+			return;
+		}
+
+		BitOutputStream out = new BitOutputStream(bytes);
+		HuffHeader header = new HuffHeader();
+		header.writeHeader(encoder.getCodeLengths(), out);
+		long bits = header.headerSize() + encoder.getCodeLength(PSEUDO_EOF);
+		for (int i = 0; i < ALPH_SIZE; i++){
+			bits += (long) count.getCount(i) * encoder.getCodeLength(i);
+		}
+		if ((bits + BITS_PER_WORD - 1) / BITS_PER_WORD > block.remaining() + STORED_HEADER_SIZE){
+			writeStored(block, bytes); // the header is still in out, which is dropped
+			return;
+		}
+		int limit = block.limit();
+		for (int i = block.position(); i < limit; i++){
+			encoder.writeCode(block.get(i) & 0xff, out);
+		}
+		encoder.writeCode(PSEUDO_EOF, out);
+		out.flush();
+	}
+
+	/**
+	 * Write a stored payload, the bytes of the block as they are
+	 */
+	private static void writeStored(ByteBuffer block, ByteArrayOutputStream bytes) throws IOException{
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(STORED_MAGIC_NUMBER);
+		byte[] buffer = new byte[Math.min(block.remaining(), BUFFER_SIZE)];
+		ByteBuffer source = block.duplicate();
+		while (source.hasRemaining()){
+			int n = Math.min(buffer.length, source.remaining());
+			source.get(buffer, 0, n);
+			data.write(buffer, 0, n);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Write a payload of 16-bit symbols
+	 */
+	private void writeWide(ByteBuffer block, ByteArrayOutputStream bytes){
+		int[] counts = CharCounter.countWide(block);
+		int symbols = counts.length;
+		TreeMaker tree = new TreeMaker();
+		for (int i = 0; i < symbols; i++){
+			if (counts[i] > 0){
+				tree.addNode(i, counts[i]);
+			}
+		}
+		tree.addNode(symbols, 1); // PSEUDO_EOF of the wide alphabet
+		HuffEncoder encoder = new HuffEncoder(symbols);
+		encoder.setCanonical(true);
+		encoder.setMaxCodeLength(maxLength);
+		encoder.makeTable(tree);
+
+		BitOutputStream out = new BitOutputStream(bytes);
+		new HuffHeader().writeHeader(encoder.getCodeLengths(), out);
+		int i = block.position();
+		int limit = block.limit();
+		for (; i + 2 <= limit; i += 2){
+			encoder.writeCode(block.getShort(i) & 0xffff, out);
+		}
+		if (i < limit){
+			encoder.writeCode((block.get(i) & 0xff) << 8, out);
+		}
+		encoder.writeCode(symbols, out);
+		out.flush();
+	}
+
+	/**
+	 * Write an interleaved payload, the block is split into equal parts and
+	 * the last part takes the remainder, as decodeInterleaved expects
+	 */
+	private static void writeInterleaved(ByteBuffer block, HuffEncoder encoder,
+			ByteArrayOutputStream bytes) throws IOException{
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		BitOutputStream out = new BitOutputStream(header);
+		new HuffHeader().writeHeader(encoder.getCodeLengths(), out);
+		out.flush();
+		int streams = HuffTableDecoder.STREAMS;
+		ByteArrayOutputStream[] codes = new ByteArrayOutputStream[streams];
+		int part = block.remaining() / streams;
+		for (int k = 0; k < streams; k++){
+			int start = block.position() + k * part;
+			int end = k == streams - 1 ? block.limit() : start + part;
+			codes[k] = new ByteArrayOutputStream(part / 2 + 16);
+			out = new BitOutputStream(codes[k]);
+			for (int i = start; i < end; i++){
+				encoder.writeCode(block.get(i) & 0xff, out);
+			}
+			out.flush();
+		}
+		DataOutputStream data = new DataOutputStream(bytes);
+		data.writeInt(INTERLEAVED_MAGIC_NUMBER);
+		data.writeInt(header.size());
+		for (int k = 0; k < streams - 1; k++){
+			data.writeInt(codes[k].size());
+		}
+		header.writeTo(data);
+		for (ByteArrayOutputStream stream : codes){
+			stream.writeTo(data);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Decompress one block payload into dst.
+	 * @param payload holds the compressed block between its position and limit
+	 * @param dst is where the block is stored
+	 * @param off is the index in dst of the first byte of the block
+	 * @param len is the uncompressed length recorded for the block
+	 * @throws IOException if the payload is bad or does not hold exactly len bytes
+	 */
+	static void decompressBlock(ByteBuffer payload, byte[] dst, int off, int len) throws IOException{
+		if (payload.remaining() >= STORED_HEADER_SIZE
+				&& payload.getInt(payload.position()) == STORED_MAGIC_NUMBER){
+			if (payload.remaining() != STORED_HEADER_SIZE + len){
+				throw new IOException("Block does not match its recorded length!");
+			}
+			ByteBuffer stored = payload.duplicate();
+			stored.position(payload.position() + STORED_HEADER_SIZE);
+			stored.get(dst, off, len);
+			return;
+		}
+		if (payload.remaining() >= BITS_PER_INT / BITS_PER_WORD
+				&& payload.getInt(payload.position()) == CONTEXT_MAGIC_NUMBER){
+			HuffContextCoder.decompress(payload, dst, off, len);
+			return;
+		}
+		if (payload.remaining() >= INTERLEAVED_HEADER_SIZE
+				&& payload.getInt(payload.position()) == INTERLEAVED_MAGIC_NUMBER){
+			decompressInterleaved(payload, dst, off, len);
+			return;
+		}
+		BitInputStream in = new BitInputStream(payload);
+		HuffHeader header = new HuffHeader();
+		header.readHeader(in);
+		if (!header.isCanonical()){
+			throw new IOException("Block header is not canonical!");
+		}
+		HuffTableDecoder decoder = HuffTableCache.decoder(header.getCodeLengths());
+		if (header.getCodeLengths().length != ALPH_SIZE + 1){
+			decompressWide(decoder, in, dst, off, len);
+			return;
+		}
+		int n = decoder.decode(in, dst, off, len);
+		if (n == len && !decoder.isFinished()){
+			n += decoder.decode(in, new byte[1], 0, 1); // must read PSEUDO_EOF
+		}
+		if (n != len || !decoder.isFinished()){
+			throw new IOException("Block does not match its recorded length!");
+		}
+	}
+
+	/**
+	 * Decode the codes of a payload of 16-bit symbols into dst
+	 */
+	private static void decompressWide(HuffTableDecoder decoder, BitInputStream in,
+			byte[] dst, int off, int len) throws IOException{
+		byte[] last = new byte[2];
+		int n = decoder.decodeWide(in, dst, off, len & ~1);
+		if (n == (len & ~1) && (len & 1) != 0 && decoder.decodeWide(in, last, 0, 2) == 2){
+			dst[off + n++] = last[0]; // the low byte is padding
+		}
+		if (n == len && !decoder.isFinished()){
+			n += decoder.decodeWide(in, last, 0, 2); // must read PSEUDO_EOF
+		}
+		if (n != len || !decoder.isFinished()){
+			throw new IOException("Block does not match its recorded length!");
+		}
+	}
+
+	/**
+	 * Decompress an interleaved payload into dst
+	 */
+	private static void decompressInterleaved(ByteBuffer payload, byte[] dst, int off, int len)
+			throws IOException{
+		int streams = HuffTableDecoder.STREAMS;
+		int[] starts = new int[streams + 2]; // header, the streams and the end
+		starts[0] = payload.position() + INTERLEAVED_HEADER_SIZE;
+		long end = starts[0];
+		for (int k = 0; k < streams; k++){
+			end += payload.getInt(payload.position() + 4 * (k + 1));
+			if (end < starts[k] || end > payload.limit()){
+				throw new IOException("Bad interleaved block!");
+			}
+			starts[k + 1] = (int) end;
+		}
+		starts[streams + 1] = payload.limit();
+		HuffHeader header = new HuffHeader();
+		header.readHeader(new BitInputStream(slice(payload, starts[0], starts[1])));
+		if (!header.isCanonical()){
+			throw new IOException("Block header is not canonical!");
+		}
+		BitInputStream[] inputs = new BitInputStream[streams];
+		for (int k = 0; k < streams; k++){
+			inputs[k] = new BitInputStream(slice(payload, starts[k + 1], starts[k + 2]));
+		}
+		HuffTableDecoder decoder = HuffTableCache.decoder(header.getCodeLengths());
+		decoder.decodeInterleaved(inputs, dst, off, len);
+	}
+
+	/**
+	 * Returns a view of the bytes [from, to) of buffer
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int from, int to){
+		ByteBuffer slice = buffer.duplicate();
+		slice.limit(to).position(from);
+		return slice;
+	}
+
+	/**
+	 * Decompress a block file one block at a time. Frame lengths are
+	 * checked before anything is allocated for them, so no more than
+	 * MAX_BLOCK_SIZE bytes per buffer are allocated whatever the input.
+	 * @param in is the compressed data, starting with BLOCK_MAGIC_NUMBER
+	 * @param out is where the uncompressed data is written
+	 * @throws IOException if the data is bad or the I/O fails
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException{
+		DataInputStream input = new DataInputStream(in);
+		try{
+			if (input.readInt() != BLOCK_MAGIC_NUMBER){
+				throw new IOException("Magic number incorrect!");
+			}
+			int blockSize = input.readInt();
+			if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE){
+				throw new IOException("Bad block frame!");
+			}
+			byte[] payload = new byte[0];
+			byte[] block = new byte[0];
+			int compressed;
+			while ((compressed = input.readInt()) != 0){
+				int size = input.readInt();
+				// payloads larger than a stored block are never written
+				if (compressed < 0 || size < 0 || size > blockSize || compressed > size + STORED_HEADER_SIZE){
+					throw new IOException("Bad block frame!");
+				}
+				if (payload.length < compressed){
+					payload = new byte[compressed];
+				}
+				if (block.length < size){
+					block = new byte[size];
+				}
+				input.readFully(payload, 0, compressed);
+				decompressBlock(ByteBuffer.wrap(payload, 0, compressed), block, 0, size);
+				out.write(block, 0, size);
+			}
+		}
+		catch (EOFException e){
+			throw new IOException("Compressed blocks end too soon!");
+		}
+		finally{
+			in.close();
+			out.close();
+		}
+	}
+}
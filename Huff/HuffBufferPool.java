@@ -0,0 +1,63 @@
+import java.util.concurrent.ArrayBlockingQueue;
+/**
+ * A pool of byte arrays to encode into and decode into, shared by any
+ * number of threads. A released array is kept for the next acquire, so
+ * in steady state requests reuse the same arrays instead of allocating.
+ * The queue is array-backed, pooling an array allocates nothing either.
+ * @author Zifan Yang
+ *
+ */
+public class HuffBufferPool {
+	private final int bufferSize;
+	private final ArrayBlockingQueue<byte[]> free;
+
+	/**
+	 * @param bufferSize is the smallest length of the arrays handed out
+	 * @param capacity is the most arrays kept while released
+	 * @throws IllegalArgumentException if bufferSize or capacity is not positive
+	 */
+	public HuffBufferPool(int bufferSize, int capacity){
+		if (bufferSize <= 0 || capacity <= 0){
+			throw new IllegalArgumentException("Buffer size and capacity must be positive!");
+		}
+		this.bufferSize = bufferSize;
+		free = new ArrayBlockingQueue<byte[]>(capacity);
+	}
+
+	/**
+	 * Returns an array of at least minSize bytes, a pooled one if one is
+	 * free and large enough. Its contents are undefined.
+	 * @param minSize is the number of bytes needed
+	 * @return the array, to be given back with release
+	 */
+	public byte[] acquire(long minSize){
+		if (minSize > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Buffer of " + minSize + " bytes is too large!");
+		}
+		byte[] buffer = free.poll();
+		if (buffer != null && buffer.length >= minSize){
+			return buffer;
+		}
+		if (buffer != null){
+			free.offer(buffer); // too small for this request, keep it for others
+		}
+		return new byte[Math.max(bufferSize, (int) minSize)];
+	}
+
+	/**
+	 * Give an array back to the pool, it is dropped if the pool is full.
+	 * @param buffer is an array from acquire, not used by the caller afterwards
+	 */
+	public void release(byte[] buffer){
+		if (buffer.length >= bufferSize){
+			free.offer(buffer);
+		}
+	}
+
+	/**
+	 * @return the number of arrays waiting to be reused
+	 */
+	public int available(){
+		return free.size();
+	}
+}
@@ -0,0 +1,323 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+/**
+ * An immutable coder of bytes built from a code table, the canonical
+ * codes of given code lengths. Encoding and decoding work on arrays
+ * supplied by the caller with the bits held in local variables, so one
+ * codec can be used by any number of threads at once and nothing is
+ * allocated per call. Together with a HuffBufferPool for the arrays a
+ * server can code concurrent requests without allocating once the pool
+ * is warm:
+ * <pre>
+ * byte[] buffer = pool.acquire(codec.maxEncodedSize(len));
+ * try{
+ *     int n = codec.encode(src, off, len, buffer, 0);
+ *     ...
+ * }
+ * finally{
+ *     pool.release(buffer);
+ * }
+ * </pre>
+ * The encoded form is the codes followed by PSEUDO_EOF, padded to a whole
+ * byte. Unless asked for, no header is written and the codec on the other
+ * side must be built from the same code lengths. With the header the
+ * encoded form is a compressed file with a canonical header, which
+ * HuffModel reads from memory or from a stream.
+ * <P>
+ * The ByteBuffer versions work on heap and direct buffers alike, reading
+ * the bytes in place.
+ * @author Zifan Yang
+ *
+ */
+public final class HuffCodec implements IHuffConstants {
+	/**
+	 * Longest code a codec can use, so a code always fits in the bit buffer
+	 */
+	public static final int MAX_LENGTH = 64 - BITS_PER_WORD;
+
+	private static final int HEADER_BUFFER_SIZE = 256; // bytes buffered writing a header, most take fewer
+
+	private final int[] lengths; // code length of each byte and PSEUDO_EOF
+	private final long[] codes;
+	private final int longest;
+	private volatile HuffTableDecoder decoder; // made on the first decode, encoding never needs it
+	private final byte[] header; // canonical header written by HuffHeader, padded to a whole byte
+	private final int headerBits;
+
+	/**
+	 * Build a codec from the code lengths of a complete prefix code.
+	 * @param lengths is the code length of each byte and PSEUDO_EOF, which
+	 * is last, 0 for bytes that cannot be coded
+	 * @throws IllegalArgumentException if there are not ALPH_SIZE + 1
+	 * lengths, PSEUDO_EOF has no code, a code is longer than MAX_LENGTH or
+	 * the lengths are not those of a complete prefix code
+	 */
+	public HuffCodec(int[] lengths){
+		if (lengths.length != ALPH_SIZE + 1 || lengths[PSEUDO_EOF] == 0){
+			throw new IllegalArgumentException("Code lengths must cover every byte and PSEUDO_EOF!");
+		}
+		this.lengths = lengths.clone(); // checked after copying, so later changes cannot slip past
+		if (!HuffHeader.isCompleteCode(this.lengths)){
+			throw new IllegalArgumentException("Code lengths are not those of a complete prefix code!");
+		}
+		int longest = 0;
+		for (int length : this.lengths){
+			longest = Math.max(longest, length);
+		}
+		if (longest > MAX_LENGTH){
+			throw new IllegalArgumentException("Codes must be at most " + MAX_LENGTH + " bits!");
+		}
+		this.longest = longest;
+		codes = HuffEncoder.canonicalCodes(this.lengths);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BUFFER_SIZE);
+		BitOutputStream out = new BitOutputStream(bytes, HEADER_BUFFER_SIZE);
+		HuffHeader writer = new HuffHeader();
+		writer.writeHeader(this.lengths, out);
+		out.flush();
+		header = bytes.toByteArray();
+		headerBits = writer.headerSize();
+	}
+
+	/**
+	 * Build a codec for the counts of the bytes of some data. The tree is
+	 * built from the counts themselves rather than looked up in
+	 * HuffTableCache, the data is rarely seen again and a lookup would only
+	 * add a lock and a key copy per call.
+	 * @param counts is the count of each byte, bytes counted 0 cannot be coded
+	 * @param maxLength is the longest code allowed, 0 for no limit
+	 * @return the codec
+	 */
+	public static HuffCodec fromCounts(int[] counts, int maxLength){
+		TreeMaker tree = new TreeMaker();
+		for (int i = 0; i < counts.length; i++){
+			if (counts[i] > 0){
+				tree.addNode(i, counts[i]);
+			}
+		}
+		tree.addNode(PSEUDO_EOF, 1);
+		HuffEncoder encoder = new HuffEncoder();
+		encoder.setCanonical(true);
+		encoder.setMaxCodeLength(maxLength);
+		encoder.makeTable(tree);
+		return new HuffCodec(encoder.getCodeLengths());
+	}
+
+	/**
+	 * @return the code length of each byte and PSEUDO_EOF
+	 */
+	public int[] getCodeLengths(){
+		return lengths.clone();
+	}
+
+	/**
+	 * Returns true if every byte has a code, so any data can be encoded
+	 * @return true if no code length is 0
+	 */
+	public boolean codesAll(){
+		for (int length : lengths){
+			if (length == 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the exact number of bits encode writes for the data, before
+	 * padding.
+	 * @throws IllegalArgumentException if a byte has no code
+	 */
+	public long encodedBits(byte[] src, int off, int len){
+		long bits = lengths[PSEUDO_EOF];
+		for (int i = off; i < off + len; i++){
+			int length = lengths[src[i] & 0xff];
+			if (length == 0){
+				throw new IllegalArgumentException("Byte " + (src[i] & 0xff) + " has no code!");
+			}
+			bits += length;
+		}
+		return bits;
+	}
+
+	/**
+	 * Returns the exact number of bits encode writes for data with the
+	 * given byte counts, before padding.
+	 * @param counts is the count of each byte
+	 * @throws IllegalArgumentException if a byte counted has no code
+	 */
+	public long encodedBits(int[] counts){
+		long bits = lengths[PSEUDO_EOF];
+		for (int i = 0; i < ALPH_SIZE; i++){
+			if (counts[i] > 0 && lengths[i] == 0){
+				throw new IllegalArgumentException("Byte " + i + " has no code!");
+			}
+			bits += (long) counts[i] * lengths[i];
+		}
+		return bits;
+	}
+
+	/**
+	 * @return the number of bits of the canonical header encode writes
+	 * when asked to
+	 */
+	public int headerBits(){
+		return headerBits;
+	}
+
+	/**
+	 * Returns the most bytes encode can write for len bytes of data.
+	 * @param len is the length of the data
+	 * @return the bound
+	 */
+	public long maxEncodedSize(int len){
+		return ((long) len * longest + lengths[PSEUDO_EOF] + BITS_PER_WORD - 1) / BITS_PER_WORD;
+	}
+
+	/**
+	 * Encode src[off, off + len) and PSEUDO_EOF into dst starting at dstOff.
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if a byte has no code or dst is too
+	 * small, in which case what was written to dst is undefined
+	 */
+	public int encode(byte[] src, int off, int len, byte[] dst, int dstOff){
+		if (dst.length - dstOff < maxEncodedSize(len)
+				&& dst.length - dstOff < (encodedBits(src, off, len) + BITS_PER_WORD - 1) / BITS_PER_WORD){
+			throw new IllegalArgumentException("Encoded data does not fit!");
+		}
+		int pos = dstOff;
+		long buffer = 0; // pending bits, the rightmost count are valid
+		int count = 0;
+		for (int i = off; i < off + len; i++){
+			int b = src[i] & 0xff;
+			if (lengths[b] == 0){
+				throw new IllegalArgumentException("Byte " + b + " has no code!");
+			}
+			buffer = (buffer << lengths[b]) | codes[b];
+			count += lengths[b];
+			while (count >= BITS_PER_WORD){
+				count -= BITS_PER_WORD;
+				dst[pos++] = (byte) (buffer >>> count);
+			}
+		}
+		buffer = (buffer << lengths[PSEUDO_EOF]) | codes[PSEUDO_EOF];
+		count += lengths[PSEUDO_EOF];
+		while (count >= BITS_PER_WORD){
+			count -= BITS_PER_WORD;
+			dst[pos++] = (byte) (buffer >>> count);
+		}
+		if (count > 0){
+			dst[pos++] = (byte) (buffer << (BITS_PER_WORD - count));
+		}
+		return pos - dstOff;
+	}
+
+	/**
+	 * Encode the bytes between the position and the limit of src and
+	 * PSEUDO_EOF into dst at its position, after the canonical header if
+	 * header is true. The position of src moves to its limit and the
+	 * position of dst past the bytes written.
+	 * @param header true to write the canonical header first
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException if a byte has no code or dst is too
+	 * small, in which case neither position has moved and what was written
+	 * to dst is undefined
+	 */
+	public int encode(ByteBuffer src, ByteBuffer dst, boolean header){
+		int off = src.position();
+		int end = src.limit();
+		long headerBytes = header ? this.header.length : 0;
+		if (dst.remaining() < maxEncodedSize(end - off) + headerBytes){
+			long bits = (header ? headerBits : 0) + encodedBits(count(src));
+			if (dst.remaining() < (bits + BITS_PER_WORD - 1) / BITS_PER_WORD){
+				throw new IllegalArgumentException("Encoded data does not fit!");
+			}
+		}
+		int start = dst.position();
+		int pos = start;
+		long buffer = 0; // pending bits, the rightmost count are valid
+		int count = 0;
+		if (header){
+			int whole = headerBits / BITS_PER_WORD;
+			dst.put(pos, this.header, 0, whole);
+			pos += whole;
+			count = headerBits % BITS_PER_WORD;
+			if (count > 0){
+				buffer = (this.header[whole] & 0xff) >>> (BITS_PER_WORD - count); // the last, partial byte
+			}
+		}
+		for (int i = off; i < end; i++){
+			int b = src.get(i) & 0xff;
+			if (lengths[b] == 0){
+				throw new IllegalArgumentException("Byte " + b + " has no code!");
+			}
+			buffer = (buffer << lengths[b]) | codes[b];
+			count += lengths[b];
+			while (count >= BITS_PER_WORD){
+				count -= BITS_PER_WORD;
+				dst.put(pos++, (byte) (buffer >>> count));
+			}
+		}
+		buffer = (buffer << lengths[PSEUDO_EOF]) | codes[PSEUDO_EOF];
+		count += lengths[PSEUDO_EOF];
+		while (count >= BITS_PER_WORD){
+			count -= BITS_PER_WORD;
+			dst.put(pos++, (byte) (buffer >>> count));
+		}
+		if (count > 0){
+			dst.put(pos++, (byte) (buffer << (BITS_PER_WORD - count)));
+		}
+		src.position(end);
+		dst.position(pos);
+		return pos - start;
+	}
+
+	private static int[] count(ByteBuffer src){
+		int[] counts = new int[ALPH_SIZE];
+		for (int i = src.position(); i < src.limit(); i++){
+			counts[src.get(i) & 0xff]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the decoder, made when first needed so a codec that only
+	 * encodes, e.g., one per compress(ByteBuffer, ByteBuffer) call of
+	 * HuffModel, never builds one. Threads that race to make it each get a
+	 * decoder for the same lengths, so either may be kept.
+	 */
+	private HuffTableDecoder decoder(){
+		HuffTableDecoder decoder = this.decoder;
+		if (decoder == null){
+			decoder = HuffTableCache.decoder(lengths);
+			this.decoder = decoder;
+		}
+		return decoder;
+	}
+
+	/**
+	 * Decode the codes in src[off, off + len) up to PSEUDO_EOF into dst.
+	 * @param dstLen is the most bytes written to dst starting at dstOff
+	 * @return the number of bytes decoded
+	 * @throws IOException if the codes end before PSEUDO_EOF or decode to
+	 * more than dstLen bytes
+	 */
+	public int decode(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException{
+		return decoder().decode(src, off, len, dst, dstOff, dstLen);
+	}
+
+	/**
+	 * Decode the codes between the position and the limit of src, without
+	 * a header, up to PSEUDO_EOF into dst at its position. The position of
+	 * src moves to its limit and the position of dst past the bytes decoded.
+	 * @return the number of bytes decoded
+	 * @throws IOException if the codes end before PSEUDO_EOF or do not fit
+	 * in the remaining bytes of dst, in which case neither position has moved
+	 */
+	public int decode(ByteBuffer src, ByteBuffer dst) throws IOException{
+		int n = decoder().decode(src, src.position(), src.remaining(), 0, dst, dst.position(), dst.remaining());
+		src.position(src.limit());
+		dst.position(dst.position() + n);
+		return n;
+	}
+}
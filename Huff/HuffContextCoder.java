@@ -0,0 +1,311 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+/**
+ * Codes a block with order-1 contexts: each byte is coded with a table
+ * chosen by the byte before it, so text and logs, where the previous byte
+ * tells a lot about the next one, take fewer bits than with one table.
+ * A table per previous byte would cost a header each, so the contexts are
+ * clustered: starting from one cluster per previous byte seen, the two
+ * clusters whose merge costs the fewest bits are merged, as long as the
+ * header saved outweighs the codes made longer, and always until at most
+ * MAX_CLUSTERS are left. The cost of a cluster is the entropy of its
+ * counts, the size of its codes before rounding to whole bits.
+ * <P>
+ * Payload layout, a bit stream padded to a whole byte:
+ * <pre>
+ * CONTEXT_MAGIC_NUMBER, number of clusters - 1 in 8 bits
+ * for each previous byte 0 to 255: its cluster in just enough bits
+ * for each cluster: a canonical header written by HuffHeader
+ * the codes, each with the table of the cluster of the previous byte,
+ * then PSEUDO_EOF
+ * </pre>
+ * The first byte of a block is coded as if it followed a 0.
+ * Decoding stays table-driven, with one HuffTableDecoder per cluster.
+ * @author Zifan Yang
+ *
+ */
+public class HuffContextCoder implements IHuffConstants {
+	/**
+	 * Most clusters, and so tables, written per block
+	 */
+	public static final int MAX_CLUSTERS = 32;
+
+	private static final int CLUSTER_COUNT_BITS = 8;
+	// rough size of a canonical header: its magic number and a few bits per symbol used
+	private static final int TABLE_BITS = BITS_PER_INT;
+	private static final int BITS_PER_SYMBOL = 4;
+
+	private final int maxLength;
+
+	/**
+	 * @param maxLength is the longest code allowed, 0 for no limit
+	 * @throws IllegalArgumentException if maxLength is not 0 or 9 to MAX_CODE_LENGTH
+	 */
+	public HuffContextCoder(int maxLength){
+		new HuffEncoder().setMaxCodeLength(maxLength); // validates
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Compress a block, appending the payload to bytes.
+	 * @param block holds the bytes between its position and limit
+	 * @param bytes is where the payload is written
+	 */
+	public void compress(ByteBuffer block, ByteArrayOutputStream bytes){
+		int[][] counts = count(block);
+		int[] clusterOf = cluster(counts);
+		int clusters = 0;
+		for (int c : clusterOf){
+			clusters = Math.max(clusters, c + 1);
+		}
+		int[][] merged = new int[clusters][ALPH_SIZE];
+		for (int prev = 0; prev < ALPH_SIZE; prev++){
+			add(merged[clusterOf[prev]], counts[prev]);
+		}
+
+		BitOutputStream out = new BitOutputStream(bytes);
+		out.write(BITS_PER_INT, CONTEXT_MAGIC_NUMBER);
+		out.write(CLUSTER_COUNT_BITS, clusters - 1);
+		int mapBits = mapBits(clusters);
+		for (int prev = 0; prev < ALPH_SIZE; prev++){
+			out.write(mapBits, clusterOf[prev]);
+		}
+		HuffEncoder[] encoders = new HuffEncoder[clusters];
+		for (int c = 0; c < clusters; c++){
+			encoders[c] = HuffTableCache.encoder(merged[c], true, maxLength);
+			new HuffHeader().writeHeader(encoders[c].getCodeLengths(), out);
+		}
+		HuffEncoder[] byContext = new HuffEncoder[ALPH_SIZE];
+		for (int prev = 0; prev < ALPH_SIZE; prev++){
+			byContext[prev] = encoders[clusterOf[prev]];
+		}
+		int prev = 0;
+		int limit = block.limit();
+		for (int i = block.position(); i < limit; i++){
+			int b = block.get(i) & 0xff;
+			byContext[prev].writeCode(b, out);
+			prev = b;
+		}
+		byContext[prev].writeCode(PSEUDO_EOF, out);
+		out.flush();
+	}
+
+	/**
+	 * Decompress a payload written by compress into dst.
+	 * @param payload holds the compressed block between its position and limit
+	 * @param dst is where the block is stored
+	 * @param off is the index in dst of the first byte of the block
+	 * @param len is the uncompressed length recorded for the block
+	 * @throws IOException if the payload is bad or does not hold exactly len bytes
+	 */
+	public static void decompress(ByteBuffer payload, byte[] dst, int off, int len) throws IOException{
+		BitInputStream in = new BitInputStream(payload);
+		if (in.read(BITS_PER_INT) != CONTEXT_MAGIC_NUMBER){
+			throw new IOException("Magic number incorrect!");
+		}
+		int clusters = in.read(CLUSTER_COUNT_BITS) + 1;
+		int mapBits = mapBits(clusters);
+		int[] clusterOf = new int[ALPH_SIZE];
+		for (int prev = 0; prev < ALPH_SIZE; prev++){
+			clusterOf[prev] = mapBits == 0 ? 0 : in.read(mapBits);
+			if (clusterOf[prev] < 0 || clusterOf[prev] >= clusters){
+				throw new IOException("Bad context map!");
+			}
+		}
+		HuffTableDecoder[] decoders = new HuffTableDecoder[clusters];
+		for (int c = 0; c < clusters; c++){
+			HuffHeader header = new HuffHeader();
+			header.readHeader(in);
+			if (!header.isCanonical() || header.getCodeLengths().length != ALPH_SIZE + 1){
+				throw new IOException("Context header is not canonical!");
+			}
+			decoders[c] = HuffTableCache.decoder(header.getCodeLengths());
+		}
+		HuffTableDecoder[] byContext = new HuffTableDecoder[ALPH_SIZE];
+		for (int prev = 0; prev < ALPH_SIZE; prev++){
+			byContext[prev] = decoders[clusterOf[prev]];
+		}
+		int end = off + len;
+		int i = off;
+		int symbol = byContext[0].decodeSymbol(in);
+		while (symbol != PSEUDO_EOF && i < end){
+			dst[i++] = (byte) symbol;
+			symbol = byContext[symbol].decodeSymbol(in);
+		}
+		if (i != end || symbol != PSEUDO_EOF){
+			throw new IOException("Block does not match its recorded length!");
+		}
+	}
+
+	/**
+	 * Count each byte of the block under the byte before it
+	 */
+	private static int[][] count(ByteBuffer block){
+		int[][] counts = new int[ALPH_SIZE][ALPH_SIZE];
+		int prev = 0;
+		int limit = block.limit();
+		for (int i = block.position(); i < limit; i++){
+			int b = block.get(i) & 0xff;
+			counts[prev][b]++;
+			prev = b;
+		}
+		return counts;
+	}
+
+	/**
+	 * Merge the contexts into clusters, returns the cluster of each
+	 * previous byte, numbered from 0 without gaps. Previous bytes never
+	 * seen go to cluster 0, their table is never used.
+	 */
+	static int[] cluster(int[][] counts){
+		int[] seen = new int[ALPH_SIZE];
+		int k = 0;
+		for (int prev = 0; prev < ALPH_SIZE; prev++){
+			if (total(counts[prev]) > 0){
+				seen[k++] = prev;
+			}
+		}
+		int[] clusterOf = new int[ALPH_SIZE];
+		if (k <= 1){
+			return clusterOf;
+		}
+		int[][] hist = new int[k][];
+		double[] cost = new double[k];
+		int[] members = new int[k]; // the cluster each seen context is in, by index
+		for (int a = 0; a < k; a++){
+			hist[a] = counts[seen[a]].clone();
+			cost[a] = cost(hist[a]);
+			members[a] = a;
+		}
+		double[][] gain = new double[k][k]; // bits lost by merging a and b, negative if it saves
+		for (int a = 0; a < k; a++){
+			for (int b = a + 1; b < k; b++){
+				gain[a][b] = mergeCost(hist[a], cost[a], hist[b], cost[b]);
+			}
+		}
+		boolean[] alive = new boolean[k];
+		Arrays.fill(alive, true);
+		for (int left = k; left > 1; left--){
+			int bestA = -1;
+			int bestB = -1;
+			for (int a = 0; a < k; a++){
+				if (!alive[a]){
+					continue;
+				}
+				for (int b = a + 1; b < k; b++){
+					if (alive[b] && (bestA < 0 || gain[a][b] < gain[bestA][bestB])){
+						bestA = a;
+						bestB = b;
+					}
+				}
+			}
+			if (gain[bestA][bestB] >= 0 && left <= MAX_CLUSTERS){
+				break;
+			}
+			add(hist[bestA], hist[bestB]);
+			cost[bestA] = cost(hist[bestA]);
+			alive[bestB] = false;
+			for (int i = 0; i < k; i++){
+				if (members[i] == bestB){
+					members[i] = bestA;
+				}
+			}
+			for (int b = 0; b < k; b++){
+				if (alive[b] && b != bestA){
+					double g = mergeCost(hist[bestA], cost[bestA], hist[b], cost[b]);
+					if (b < bestA){
+						gain[b][bestA] = g;
+					}
+					else{
+						gain[bestA][b] = g;
+					}
+				}
+			}
+		}
+		int[] number = new int[k];
+		int clusters = 0;
+		for (int a = 0; a < k; a++){
+			number[a] = alive[a] ? clusters++ : -1;
+		}
+		for (int i = 0; i < k; i++){
+			clusterOf[seen[i]] = number[members[i]];
+		}
+		return clusterOf;
+	}
+
+	/**
+	 * Returns the bits lost by coding a and b with one table instead of
+	 * two, counting the header saved
+	 */
+	private static double mergeCost(int[] a, double costA, int[] b, double costB){
+		long total = 0;
+		double sum = 0; // sum of n log2 n
+		int used = 0;
+		for (int i = 0; i < ALPH_SIZE; i++){
+			int n = a[i] + b[i];
+			if (n > 0){
+				total += n;
+				sum += n * log2(n);
+				used++;
+			}
+		}
+		double merged = total * log2(total) - sum;
+		return merged - costA - costB + headerBits(used) - headerBits(used(a)) - headerBits(used(b));
+	}
+
+	/**
+	 * Returns the size in bits of the codes of a context, its entropy
+	 */
+	private static double cost(int[] counts){
+		long total = 0;
+		double sum = 0;
+		for (int n : counts){
+			if (n > 0){
+				total += n;
+				sum += n * log2(n);
+			}
+		}
+		return total == 0 ? 0 : total * log2(total) - sum;
+	}
+
+	private static double headerBits(int used){
+		return TABLE_BITS + BITS_PER_SYMBOL * used;
+	}
+
+	private static int used(int[] counts){
+		int used = 0;
+		for (int n : counts){
+			if (n > 0){
+				used++;
+			}
+		}
+		return used;
+	}
+
+	private static long total(int[] counts){
+		long total = 0;
+		for (int n : counts){
+			total += n;
+		}
+		return total;
+	}
+
+	private static void add(int[] to, int[] from){
+		for (int i = 0; i < to.length; i++){
+			to[i] += from[i];
+		}
+	}
+
+	private static double log2(double x){
+		return Math.log(x) / Math.log(2);
+	}
+
+	/**
+	 * Returns the bits needed to store a cluster number
+	 */
+	private static int mapBits(int clusters){
+		return BITS_PER_INT - Integer.numberOfLeadingZeros(clusters - 1);
+	}
+}
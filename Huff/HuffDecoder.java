@@ -8,20 +8,30 @@ import java.io.IOException;
  */
 
 public class HuffDecoder implements IHuffDecoder {
-	private TreeNode root;
+	private HuffFlatTree tree;
 	/**
      * Initialize by having access to the tree supplied by the treeMaker
      * parameter so that subsequent calls to <code>doDecode</code> will be
      * able to read one bit-at-a-time and write values encoded in the input
-     * file by accessing leaves of the tree appropriately. Presumably the tree
-     * is stored in some state accessible to <code>doDecode</code>.
+     * file by accessing leaves of the tree appropriately. The tree is
+     * flattened first, decoding walks child indices in one array.
      * @param treeMaker is the source of the tree that will be used to decode
      * a compressed file
      */
 	@Override
 	public void initialize(TreeMaker treeMaker) {
-		root = treeMaker.root;
+		tree = HuffFlatTree.fromTree(treeMaker.root);
 	}
+
+	/**
+	 * Initialize from a flattened tree, e.g., read from a tree header by
+	 * HuffHeader.readFlatHeader.
+	 * @param tree is the tree that will be used to decode
+	 */
+	public void initialize(HuffFlatTree tree) {
+		this.tree = tree;
+	}
+
 	 /**
      * Read one bit-at-a-time from the input file which is presumed to be a file
      * compressed by this suite of classes. The data stored in the file is written
@@ -37,33 +47,18 @@ public class HuffDecoder implements IHuffDecoder {
 
 	@Override
 	public void doDecode(BitInputStream input, BitOutputStream output) throws IOException {
-		int bits = 0;
-		TreeNode walk = root;
+		if (tree.getSingleSymbol() != -1 && tree.getSingleSymbol() != PSEUDO_EOF){
+			throw new IOException("Coding tree has no PSEUDO_EOF!");
+		}
 		while (true){
-	        	bits = input.read(1); 
-	            if (bits == -1){
-	               throw new IOException("Should not happen! Trouble reading bits!"); 
-	            }
-	            else{ 
-	            	// use the zero/one value of the bit read
-	            	// to traverse Huffman coding tree
-	            	// if a leaf is reached, decode the character and print UNLESS
-	            	// the character is pseudo-EOF, then decompression done
-
-	                if ( (bits & 1) == 0){ walk = walk.myLeft; }// read a 0, go left in tree
-	                else{ walk = walk.myRight;}  //  read a 1, go right in tree               
-
-	                if (walk.isExternal()){
-	                	if (walk.myValue == PSEUDO_EOF){
-	                    	break; 
-	                    }
-	                	else{
-	                    	output.write(BITS_PER_WORD, walk.myValue);
-	                    	walk = root; 
-	                	}
-	                }              	
-	            } 
-	    }
+			// follow the bits from the root to a leaf, then decode the character
+			// and print UNLESS the character is pseudo-EOF, then decompression done
+			int symbol = tree.decodeSymbol(input);
+			if (symbol == PSEUDO_EOF){
+				break;
+			}
+			output.write(BITS_PER_WORD, symbol);
+		}
 		input.close();
 		output.close();
 		
@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+/**
+ * A code table trained once from a sample corpus and saved under an ID, for
+ * compressing many small messages, e.g., RPC payloads of a few hundred
+ * bytes, where a header per message would outweigh the savings and
+ * counting and building a tree per message would cost more than the codes.
+ * A message names the dictionary instead of carrying a header:
+ * <pre>
+ * DICTIONARY_MAGIC_NUMBER, dictionary ID in ID_BITS bits
+ * message length, 7 bits per byte, low bits first, the top bit set in all but the last byte
+ * the codes, then PSEUDO_EOF, padded to a whole byte
+ * </pre>
+ * The length lets a message be decompressed into an array of exactly its
+ * size, or into one from a HuffBufferPool, with nothing allocated to spare.
+ * Bytes not seen in training still need codes, so every byte is trained
+ * with one more than its count and codes are limited to MAX_LENGTH bits,
+ * an unseen byte costs at most that instead of an escape code followed by
+ * the raw byte. A dictionary is saved as DICTIONARY_MAGIC_NUMBER, its ID
+ * and a canonical header written by HuffHeader, in a file named by the ID.
+ * <P>
+ * Dictionaries are immutable, one instance can compress and decompress
+ * on any number of threads at once.
+ * <P>
+ * Usage: <code>java HuffDictionary id directory sample-file-or-directory ...</code>
+ * trains a dictionary from the samples and saves it in the directory.
+ * @author Zifan Yang
+ *
+ */
+public class HuffDictionary implements IHuffConstants {
+	/**
+	 * Number of bits storing a dictionary ID
+	 */
+	public static final int ID_BITS = 16;
+	public static final int MAX_ID = (1 << ID_BITS) - 1;
+	/**
+	 * Longest code of a dictionary
+	 */
+	public static final int MAX_LENGTH = 15;
+	public static final String SUFFIX = ".hfd";
+
+	private static final int MESSAGE_HEADER_BITS = BITS_PER_INT + ID_BITS; // before the length
+	private static final int LENGTH_BITS = 7; // bits of the length per byte
+	private static final long MAX_TOTAL = 1 << 30; // keeps the sum of the weights in an int
+
+	private final int id;
+	private final HuffCodec codec;
+
+	private HuffDictionary(int id, int[] lengths){
+		this.id = id;
+		codec = new HuffCodec(lengths);
+	}
+
+	/**
+	 * Build a dictionary from the bytes of sample files.
+	 * @param id is the ID the dictionary is saved and referenced by
+	 * @param samples are the files trained on
+	 * @return the dictionary
+	 * @throws IOException if a sample cannot be read
+	 * @throws IllegalArgumentException if id is not 0 to MAX_ID
+	 */
+	public static HuffDictionary train(int id, List<Path> samples) throws IOException{
+		checkId(id);
+		long[] totals = new long[ALPH_SIZE];
+		CharCounter count = new CharCounter();
+		for (Path sample : samples){
+			count.countAll(sample);
+			for (int i = 0; i < ALPH_SIZE; i++){
+				totals[i] += count.getCount(i);
+			}
+		}
+		long sum = 0;
+		for (long total : totals){
+			sum += total;
+		}
+		long scale = sum / MAX_TOTAL + 1;
+		TreeMaker tree = new TreeMaker();
+		for (int i = 0; i < ALPH_SIZE; i++){
+			tree.addNode(i, (int) (totals[i] / scale) + 1); // unseen bytes keep a code
+		}
+		tree.addNode(PSEUDO_EOF, 1);
+		HuffEncoder encoder = new HuffEncoder();
+		encoder.setCanonical(true);
+		encoder.setMaxCodeLength(MAX_LENGTH);
+		encoder.makeTable(tree);
+		return new HuffDictionary(id, encoder.getCodeLengths());
+	}
+
+	/**
+	 * Save this dictionary in a directory, as the file named by its ID.
+	 * @param directory is where the dictionary file is written
+	 * @return the file written
+	 * @throws IOException if the file cannot be written
+	 */
+	public File save(File directory) throws IOException{
+		File file = file(directory, id);
+		BitOutputStream out = new BitOutputStream(file.getPath());
+		out.write(BITS_PER_INT, DICTIONARY_MAGIC_NUMBER);
+		out.write(ID_BITS, id);
+		new HuffHeader().writeHeader(codec.getCodeLengths(), out);
+		out.close();
+		return file;
+	}
+
+	/**
+	 * Load the dictionary saved with an ID.
+	 * @param directory is where the dictionary was saved
+	 * @param id is the ID of the dictionary
+	 * @return the dictionary
+	 * @throws IOException if there is no such dictionary or its file is bad
+	 */
+	public static HuffDictionary load(File directory, int id) throws IOException{
+		checkId(id);
+		BitInputStream in = new BitInputStream(ByteBuffer.wrap(Files.readAllBytes(file(directory, id).toPath())));
+		if (in.read(BITS_PER_INT) != DICTIONARY_MAGIC_NUMBER || in.read(ID_BITS) != id){
+			throw new IOException("Not dictionary " + id + "!");
+		}
+		HuffHeader header = new HuffHeader();
+		header.readHeader(in);
+		int[] lengths = header.getCodeLengths();
+		if (lengths == null || lengths.length != ALPH_SIZE + 1){
+			throw new IOException("Dictionary header is not canonical!");
+		}
+		for (int length : lengths){
+			if (length == 0 || length > MAX_LENGTH){
+				throw new IOException("Dictionary must have a code of at most " + MAX_LENGTH
+						+ " bits for every byte!");
+			}
+		}
+		return new HuffDictionary(id, lengths);
+	}
+
+	private static File file(File directory, int id){
+		return new File(directory, id + SUFFIX);
+	}
+
+	private static void checkId(int id){
+		if (id < 0 || id > MAX_ID){
+			throw new IllegalArgumentException("Dictionary ID must be 0 to " + MAX_ID + "!");
+		}
+	}
+
+	/**
+	 * @return the ID of this dictionary
+	 */
+	public int getId(){
+		return id;
+	}
+
+	/**
+	 * Returns the ID of the dictionary a message was compressed with, so
+	 * the caller can pick the dictionary to decompress it with.
+	 * @param message is a compressed message
+	 * @return the dictionary ID
+	 * @throws IOException if message was not compressed with a dictionary
+	 */
+	public static int dictionaryId(byte[] message) throws IOException{
+		if (message.length < MESSAGE_HEADER_BITS / BITS_PER_WORD
+				|| ByteBuffer.wrap(message).getInt() != DICTIONARY_MAGIC_NUMBER){
+			throw new IOException("Magic number incorrect!");
+		}
+		return ((message[4] & 0xff) << BITS_PER_WORD) | (message[5] & 0xff);
+	}
+
+	/**
+	 * Compress a message with this dictionary. Nothing is counted and no
+	 * table is built, the size is summed from the code lengths and the
+	 * codes are written straight into an array of that size.
+	 * @param data holds the message
+	 * @param off is the index of the first byte of the message
+	 * @param len is the length of the message
+	 * @return the compressed message
+	 */
+	public byte[] compress(byte[] data, int off, int len){
+		int header = codesStart(len);
+		long bits = codec.encodedBits(data, off, len);
+		byte[] out = new byte[(int) (header + (bits + BITS_PER_WORD - 1) / BITS_PER_WORD)];
+		ByteBuffer.wrap(out).putInt(DICTIONARY_MAGIC_NUMBER).putShort((short) id);
+		int pos = MESSAGE_HEADER_BITS / BITS_PER_WORD;
+		int n = len;
+		for (; n >= 1 << LENGTH_BITS; n >>>= LENGTH_BITS){
+			out[pos++] = (byte) (n | 1 << LENGTH_BITS);
+		}
+		out[pos] = (byte) n;
+		codec.encode(data, off, len, out, header);
+		return out;
+	}
+
+	/**
+	 * Returns the length of the original of a compressed message, e.g., to
+	 * acquire an array to decompress it into.
+	 * @param message is a compressed message
+	 * @return the number of bytes it decompresses to
+	 * @throws IOException if message was not compressed with a dictionary
+	 * or its length is bad
+	 */
+	public static int decompressedLength(byte[] message) throws IOException{
+		dictionaryId(message);
+		return readLength(message);
+	}
+
+	/**
+	 * Returns the index of the first byte of the codes of a message of len bytes
+	 */
+	private static int codesStart(int len){
+		int start = MESSAGE_HEADER_BITS / BITS_PER_WORD + 1;
+		for (int n = len; n >= 1 << LENGTH_BITS; n >>>= LENGTH_BITS){
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * Read the message length, written in as few bytes as it takes
+	 */
+	private static int readLength(byte[] message) throws IOException{
+		int pos = MESSAGE_HEADER_BITS / BITS_PER_WORD;
+		long length = 0;
+		for (int shift = 0; ; shift += LENGTH_BITS){
+			if (pos == message.length || shift >= BITS_PER_INT){
+				throw new IOException("Bad message length!");
+			}
+			int b = message[pos++] & 0xff;
+			length |= (long) (b & ((1 << LENGTH_BITS) - 1)) << shift;
+			if (b >> LENGTH_BITS == 0){
+				break;
+			}
+		}
+		if (length > (long) (message.length - pos) * BITS_PER_WORD // codes are at least a bit
+				|| pos != codesStart((int) length)){
+			throw new IOException("Bad message length!");
+		}
+		return (int) length;
+	}
+
+	/**
+	 * Decompress a message compressed with this dictionary into an array
+	 * of exactly its length.
+	 * @param message is the compressed message
+	 * @return the original message
+	 * @throws IOException if message was compressed with another
+	 * dictionary or is bad
+	 */
+	public byte[] decompress(byte[] message) throws IOException{
+		byte[] out = new byte[decompressedLength(message)];
+		decompress(message, out, 0);
+		return out;
+	}
+
+	/**
+	 * Decompress a message compressed with this dictionary into dst, e.g.,
+	 * an array from a HuffBufferPool of at least decompressedLength bytes.
+	 * @param message is the compressed message
+	 * @param dst is where the original message is written
+	 * @param dstOff is the index in dst of its first byte
+	 * @return the length of the original message
+	 * @throws IOException if message was compressed with another
+	 * dictionary, is bad or does not fit in dst
+	 */
+	public int decompress(byte[] message, byte[] dst, int dstOff) throws IOException{
+		if (dictionaryId(message) != id){
+			throw new IOException("Message needs dictionary " + dictionaryId(message) + "!");
+		}
+		int length = readLength(message);
+		if (length > dst.length - dstOff){
+			throw new IOException("Decoded data does not fit!");
+		}
+		int start = codesStart(length);
+		int n = codec.decode(message, start, message.length - start, dst, dstOff, length);
+		if (n != length){
+			throw new IOException("Bad message length!");
+		}
+		return n;
+	}
+
+	/**
+	 * Train a dictionary from sample files and directories of them, save
+	 * it and print how well it codes the samples
+	 */
+	public static void main(String[] args) throws IOException{
+		if (args.length < 3){
+			System.err.println("Usage: java HuffDictionary id directory sample-file-or-directory ...");
+			System.exit(2);
+		}
+		List<Path> samples = new ArrayList<Path>();
+		for (int i = 2; i < args.length; i++){
+			Path path = new File(args[i]).toPath();
+			if (!Files.isDirectory(path)){
+				samples.add(path);
+				continue;
+			}
+			try (Stream<Path> walk = Files.walk(path)){
+				walk.filter(Files::isRegularFile).forEach(samples::add);
+			}
+		}
+		HuffDictionary dictionary = train(Integer.parseInt(args[0]), samples);
+		File file = dictionary.save(new File(args[1]));
+		long in = 0;
+		long out = 0;
+		for (Path sample : samples){
+			byte[] data = Files.readAllBytes(sample);
+			in += data.length;
+			out += dictionary.compress(data, 0, data.length).length;
+		}
+		System.out.printf("%s: %d samples, %d -> %d bytes, ratio %.3f%n", file, samples.size(),
+				in, out, in == 0 ? 1.0 : (double) out / in);
+	}
+}
@@ -4,20 +4,136 @@
  * Implementation of the IHuffEncoder interface
  * This class is used to generate a table compression codings
  * from a huffman coding tree
+ * Codes are kept as bits in a long with a separate length, so writing a
+ * chunk is one call on the BitOutputStream and allocates nothing.
+ * In canonical mode only the code lengths are taken from the tree and
+ * the codes themselves are assigned in canonical order, so the lengths
+ * alone are enough to rebuild them when uncompressing.
+ * An optional maximum code length keeps codes short enough to be written
+ * in one call and decoded with small tables. Longer codes are shortened
+ * with the package-merge algorithm, which finds the best code lengths
+ * within the limit, and the codes are then assigned in canonical order.
+ * The table covers ALPH_SIZE chunks unless an encoder for wider symbols is
+ * made, the last entry is always the PSEUDO_EOF of that alphabet.
  * @author Zifan Yang
  *
  */
 public class HuffEncoder implements IHuffEncoder {
-	private String[] table;
+	private long[] codes;  // code of each chunk in its rightmost bits
+	private int[] lengths; // code length of each chunk, 0 if unused
+	private boolean canonical;
+	private TreeNode root; // tree of the last makeTable
+	private TreeNode codeTree; // tree of the codes, root unless the lengths were limited
+	private int maxLength; // longest code allowed, 0 for no limit
+	private long limitCost; // bits added by the limit for the counts in the tree
+	private int[] treeLengths; // code lengths of the tree before they were limited, null if not limited
 	/**
 	 * Default constructor
-	 * Initialize table to empty strings
+	 * Initialize table to empty codes
 	 */
 	public HuffEncoder(){
-		table = new String[IHuffHeader.ALPH_SIZE + 1]; // 1 extra for PSEUDO_EOF
-		for (int i = 0; i < IHuffHeader.ALPH_SIZE + 1; i++){
-			table[i] = "";
+		this(IHuffHeader.ALPH_SIZE);
+	}
+	/**
+	 * Make an encoder for an alphabet of symbols 0 to symbols - 1, the
+	 * PSEUDO_EOF of this alphabet is symbols.
+	 * @param symbols is the number of symbols, e.g., 1 << 16 for 16-bit symbols
+	 */
+	public HuffEncoder(int symbols){
+		codes = new long[symbols + 1]; // 1 extra for PSEUDO_EOF
+		lengths = new int[symbols + 1];
+	}
+	/**
+	 * Choose between codes read off the tree and canonical codes,
+	 * the table is remade if makeTable has already been called.
+	 * @param canonical true if canonical codes are assigned
+	 */
+	public void setCanonical(boolean canonical){
+		this.canonical = canonical;
+		if (root != null){
+			makeCodings();
+		}
+	}
+	/**
+	 * Limit the length of the codes, the table is remade if makeTable has
+	 * already been called. For an alphabet wider than ALPH_SIZE chunks a
+	 * table rarely uses every symbol, so the limit only has to be long
+	 * enough for ALPH_SIZE chunks and PSEUDO_EOF, and a table using more
+	 * symbols than the limit can code is limited to the shortest length
+	 * that codes them instead.
+	 * @param maxLength is the longest code allowed, 0 for no limit
+	 * @throws IllegalArgumentException if maxLength is too short to code
+	 * ALPH_SIZE chunks and PSEUDO_EOF or longer than MAX_CODE_LENGTH
+	 */
+	public void setMaxCodeLength(int maxLength){
+		int shortest = shortestLimit(Math.min(lengths.length, IHuffConstants.ALPH_SIZE + 1));
+		if (maxLength != 0 && (maxLength < shortest || maxLength > IHuffConstants.MAX_CODE_LENGTH)){
+			throw new IllegalArgumentException("Code length limit must be between " + shortest + " and "
+				+ IHuffConstants.MAX_CODE_LENGTH + "!");
+		}
+		this.maxLength = maxLength;
+		if (root != null){
+			makeCodings();
+		}
+	}
+	/**
+	 * Returns the shortest code length limit that can code n symbols
+	 */
+	private static int shortestLimit(int n){
+		return IHuffConstants.BITS_PER_INT - Integer.numberOfLeadingZeros(n - 1);
+	}
+	/**
+	 * Returns the number of bits the code length limit adds to the output
+	 * for the counts the table was made from, or those given to
+	 * measureLimitCost, 0 if no code was too long.
+	 * @return extra bits compared with unlimited Huffman codes
+	 */
+	public long getLimitCost(){
+		return limitCost;
+	}
+	/**
+	 * Recompute getLimitCost for counts other than those the table was
+	 * made from, e.g., when a cached table is shared by similar counts.
+	 * The cost is that of the limited codes over the codes of the tree.
+	 * @param counts is the count of each chunk, PSEUDO_EOF occurs once
+	 */
+	public void measureLimitCost(int[] counts){
+		limitCost = 0;
+		if (treeLengths == null){
+			return;
 		}
+		for (int i = 0; i < counts.length; i++){
+			limitCost += (long) counts[i] * (lengths[i] - treeLengths[i]);
+		}
+		int eof = lengths.length - 1;
+		limitCost += lengths[eof] - treeLengths[eof];
+	}
+	/**
+	 * Returns an encoder with the same settings and codes as this one and
+	 * tables of its own, so its settings can be changed without changing
+	 * this encoder. The trees are shared since neither changes them.
+	 * @return the new encoder
+	 */
+	public HuffEncoder copy(){
+		HuffEncoder copy = new HuffEncoder(lengths.length - 1);
+		copy.codes = codes.clone();
+		copy.lengths = lengths.clone();
+		copy.canonical = canonical;
+		copy.root = root;
+		copy.codeTree = codeTree;
+		copy.maxLength = maxLength;
+		copy.limitCost = limitCost;
+		copy.treeLengths = treeLengths;
+		return copy;
+	}
+	/**
+	 * Returns the tree whose paths are the codes, for writing a tree
+	 * header. This is the tree given to makeTable unless codes had to be
+	 * shortened, then it is a tree built from the shortened codes.
+	 * @return root of the tree of the codes
+	 */
+	public TreeNode getCodeTree(){
+		return codeTree;
 	}
 	 /**
      * Initialize state from a tree, the tree is obtained
@@ -26,29 +142,284 @@ public class HuffEncoder implements IHuffEncoder {
      */
     public void makeTable(TreeMaker treeMaker){
         treeMaker.root = treeMaker.makeRoot();
-    	makeCodings(treeMaker.root, "");
+        root = treeMaker.root;
+        makeCodings();
+    }
+    /**
+     * Fill the table from the tree, then reassign canonical codes if needed
+     */
+    private void makeCodings(){
+    	for (int i = 0; i < lengths.length; i++){
+    		codes[i] = 0;
+    		lengths[i] = 0;
+    	}
+    	makeCodings(root, 0, 0);
+    	codeTree = root;
+    	limitCost = 0;
+    	treeLengths = null;
+    	int limit = maxLength > 0 ? Math.max(maxLength, shortestLimit(usedSymbols())) : 0;
+    	if (limit > 0 && maxCodeLength() > limit){
+    		int[] weights = new int[lengths.length];
+    		leafWeights(root, weights);
+    		int[] limited = limitedLengths(weights, limit);
+    		for (int i = 0; i < lengths.length; i++){
+    			limitCost += (long) weights[i] * (limited[i] - lengths[i]);
+    		}
+    		treeLengths = lengths;
+    		lengths = limited;
+    		codes = canonicalCodes(lengths);
+    		codeTree = treeFromCodes(codes, lengths);
+    	}
+    	else if (canonical){
+    		if (root.isExternal()){
+    			lengths[root.myValue] = 1; // a lone symbol still needs one bit
+    		}
+    		codes = canonicalCodes(lengths);
+    	}
+    }
+    
+    private int usedSymbols(){
+    	int used = 0;
+    	for (int length : lengths){
+    		if (length > 0){
+    			used++;
+    		}
+    	}
+    	return used;
+    }
+    
+    private int maxCodeLength(){
+    	int max = 0;
+    	for (int length : lengths){
+    		max = Math.max(max, length);
+    	}
+    	return max;
+    }
+    
+    /**
+     * Store the weight of each leaf below node at the index of its chunk
+     */
+    private static void leafWeights(TreeNode node, int[] weights){
+    	if (node.isExternal()){
+    		weights[node.myValue] = (int) node.myWeight; // leaves hold counts, only sums need a long
+    		return;
+    	}
+    	leafWeights(node.myLeft, weights);
+    	leafWeights(node.myRight, weights);
+    }
+    
+    /**
+     * Build the tree whose paths are the given codes, 0 going left
+     */
+    private static TreeNode treeFromCodes(long[] codes, int[] lengths){
+    	TreeNode root = new TreeNode(-1, 0);
+    	for (int i = 0; i < lengths.length; i++){
+    		TreeNode node = root;
+    		for (int bit = lengths[i] - 1; bit >= 0; bit--){
+    			boolean right = ((codes[i] >>> bit) & 1) != 0;
+    			TreeNode next = right ? node.myRight : node.myLeft;
+    			if (next == null){
+    				next = bit == 0 ? new TreeNode(i, 0) : new TreeNode(-1, 0);
+    				if (right){
+    					node.myRight = next;
+    				}
+    				else{
+    					node.myLeft = next;
+    				}
+    			}
+    			node = next;
+    		}
+    	}
+    	return root;
+    }
+
+    /**
+     * Find the code lengths of least total cost with no code longer than
+     * maxLength using package-merge. Starting from the deepest level, the
+     * items of a level are paired into packages, and the packages are merged
+     * with the leaves to form the items of the level above. The 2n - 2
+     * lightest items of the top level are chosen, and the length of a chunk's
+     * code is the number of chosen items it is part of, counting those inside
+     * chosen packages level by level. Takes O(n maxLength) time.
+     * @param weights is the count of each chunk, 0 if unused
+     * @param maxLength is the longest code allowed, 2^maxLength must be at
+     * least the number of chunks used
+     * @return the code length of each chunk, 0 if unused
+     */
+    public static int[] limitedLengths(int[] weights, int maxLength){
+    	int n = 0;
+    	for (int weight : weights){
+    		if (weight > 0){
+    			n++;
+    		}
+    	}
+    	// sort the used chunks by increasing weight, then chunk
+    	long[] keys = new long[n];
+    	n = 0;
+    	for (int i = 0; i < weights.length; i++){
+    		if (weights[i] > 0){
+    			keys[n++] = ((long) weights[i] << IHuffConstants.BITS_PER_INT) | i;
+    		}
+    	}
+    	java.util.Arrays.sort(keys);
+    	int[] leaves = new int[n];
+    	for (int i = 0; i < n; i++){
+    		leaves[i] = (int) keys[i];
+    	}
+    	int[] result = new int[weights.length];
+    	if (n == 1){
+    		result[leaves[0]] = 1;
+    		return result;
+    	}
+    	// items[level] holds the chunk of each item, -1 for a package
+    	int[][] items = new int[maxLength][];
+    	long[] itemWeights = new long[n];
+    	items[maxLength - 1] = leaves.clone();
+    	for (int i = 0; i < n; i++){
+    		itemWeights[i] = weights[leaves[i]];
+    	}
+    	for (int level = maxLength - 2; level >= 0; level--){
+    		int packages = items[level + 1].length / 2;
+    		int[] merged = new int[n + packages];
+    		long[] mergedWeights = new long[n + packages];
+    		int leaf = 0;
+    		int pack = 0;
+    		for (int k = 0; k < merged.length; k++){
+    			long packWeight = pack < packages
+    					? itemWeights[2 * pack] + itemWeights[2 * pack + 1] : Long.MAX_VALUE;
+    			if (leaf < n && weights[leaves[leaf]] <= packWeight){
+    				merged[k] = leaves[leaf];
+    				mergedWeights[k] = weights[leaves[leaf++]];
+    			}
+    			else{
+    				merged[k] = -1;
+    				mergedWeights[k] = packWeight;
+    				pack++;
+    			}
+    		}
+    		items[level] = merged;
+    		itemWeights = mergedWeights;
+    	}
+    	int chosen = 2 * n - 2;
+    	for (int level = 0; level < maxLength && chosen > 0; level++){
+    		int packages = 0;
+    		for (int k = 0; k < chosen; k++){
+    			if (items[level][k] < 0){
+    				packages++;
+    			}
+    			else{
+    				result[items[level][k]]++;
+    			}
+    		}
+    		chosen = 2 * packages;
+    	}
+    	return result;
     }
     /**
      * Recursive helper function to make codings for each node
      */
-    public void makeCodings(TreeNode root, String path){
+    public void makeCodings(TreeNode root, long code, int length){
     	if (root.isExternal()){
-    			table[root.myValue] = path;
+    		codes[root.myValue] = code;
+    		lengths[root.myValue] = length;
     		return;
     	}
-    	makeCodings(root.myLeft, path + "0");
-		makeCodings(root.myRight, path + "1");
+    	makeCodings(root.myLeft, code << 1, length + 1);
+		makeCodings(root.myRight, (code << 1) | 1, length + 1);
     }
-    
+
+    /**
+     * Assign canonical codes: codes of the same length are consecutive
+     * integers in chunk order, and shorter codes come before longer ones.
+     * @param lengths is the code length of each chunk, 0 if unused
+     * @return the code of each chunk in its rightmost bits
+     */
+    public static long[] canonicalCodes(int[] lengths){
+    	int max = 0;
+    	for (int length : lengths){
+    		max = Math.max(max, length);
+    	}
+    	int[] lengthCount = new int[max + 1];
+    	for (int length : lengths){
+    		lengthCount[length]++;
+    	}
+    	lengthCount[0] = 0;
+    	long[] nextCode = new long[max + 1];
+    	long code = 0;
+    	for (int bits = 1; bits <= max; bits++){
+    		code = (code + lengthCount[bits - 1]) << 1;
+    		nextCode[bits] = code;
+    	}
+    	long[] codes = new long[lengths.length];
+    	for (int i = 0; i < lengths.length; i++){
+    		if (lengths[i] > 0){
+    			codes[i] = nextCode[lengths[i]]++;
+    		}
+    	}
+    	return codes;
+    }
+
+    /**
+     * Returns the "0101" form of the rightmost length bits of code
+     */
+    private static String toCodeString(long code, int length){
+    	if (length == 0){
+    		return "";
+    	}
+    	StringBuilder sb = new StringBuilder(length);
+    	for (int i = length - 1; i >= 0; i--){
+    		sb.append((code >>> i) & 1);
+    	}
+    	return sb.toString();
+    }
+
+    /**
+     * Returns the code lengths of all chunks including PSEUDO_EOF, as
+     * written into a canonical header. It is an error to call this method
+     * before makeTable has been called.
+     * @return code length of each chunk, 0 for chunks that do not occur
+     */
+    public int[] getCodeLengths(){
+    	return lengths.clone();
+    }
+
+    /**
+     * Write the code of the specified chunk/character.
+     * @param i is the chunk written
+     * @param out is where the code is written
+     */
+    public void writeCode(int i, BitOutputStream out){
+    	out.writeLong(lengths[i], codes[i]);
+    }
+
+    /**
+     * Returns the code of the specified chunk in the rightmost bits.
+     * @param i is the chunk for which the code is returned
+     * @return the code bits
+     */
+    public long getCodeBits(int i){
+    	return codes[i];
+    }
+
+    /**
+     * Returns the length of the code of the specified chunk.
+     * @param i is the chunk for which the length is returned
+     * @return the number of bits in the code, 0 if the chunk is not used
+     */
+    public int getCodeLength(int i){
+    	return lengths[i];
+    }
+
     /**
      * Returns coding, e.g., "010111" for specified chunk/character. It
      * is an errot to call this method before makeTable has been
-     * called.
+     * called. The string is built on each call, it is meant for
+     * displaying codes rather than for compressing.
      * @param i is the chunk for which the coding is returned
      * @return the huff encoding for the specified chunk
      */
     public String getCode(int i){
-    	return table[i];
+    	return toCodeString(codes[i], lengths[i]);
     }
-	
+
 }
@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.util.Arrays;
+/**
+ * A coding tree flattened into one int array instead of a TreeNode per
+ * node. Internal nodes are numbered from 0, the root, in the order they
+ * are made, and the children of node i are stored at 2 * i for a 0 bit and
+ * 2 * i + 1 for a 1 bit. A child that is an internal node is stored as its
+ * number, a leaf as ~symbol, so it is negative, and a missing child of an
+ * incomplete code as MISSING. A tree that is a single leaf has no internal
+ * nodes and only its symbol.
+ * <P>
+ * Trees are read straight from the bits of a tree header without making
+ * nodes or recursing, and a whole tree is a single array next to itself
+ * in memory, so decoding many small files makes no garbage per node.
+ * @author Zifan Yang
+ *
+ */
+public class HuffFlatTree implements IHuffConstants {
+	/**
+	 * Child of an incomplete code that no code leads to
+	 */
+	public static final int MISSING = Integer.MIN_VALUE;
+
+	private static final int VALUE_BITS = 9; // bits of a leaf in a tree header
+	private static final int INITIAL_NODES = 64; // internal nodes room is made for when reading
+
+	private int[] children;
+	private int internal; // number of internal nodes
+	private final int single; // the symbol of a tree that is a single leaf, -1 otherwise
+
+	private HuffFlatTree(int[] children, int internal, int single){
+		this.children = children;
+		this.internal = internal;
+		this.single = single;
+	}
+
+	/**
+	 * Build the tree of a code table, e.g., of an encoder.
+	 * @param codes holds the code of each symbol in its rightmost bits
+	 * @param lengths holds the code length of each symbol, 0 if unused
+	 * @throws IllegalArgumentException if a code is a prefix of another
+	 */
+	public HuffFlatTree(long[] codes, int[] lengths){
+		children = new int[2 * Math.max(1, lengths.length)];
+		Arrays.fill(children, MISSING);
+		internal = 1;
+		int used = 0;
+		for (int symbol = 0; symbol < lengths.length; symbol++){
+			if (lengths[symbol] > 0){
+				used++;
+				insert(symbol, codes[symbol], lengths[symbol]);
+			}
+		}
+		single = -1;
+		if (used == 0){
+			internal = 0;
+		}
+	}
+
+	private void insert(int symbol, long code, int length){
+		int node = 0;
+		for (int bit = length - 1; bit > 0; bit--){
+			int slot = 2 * node + (int) ((code >>> bit) & 1);
+			if (children[slot] == MISSING){
+				if (2 * internal + 2 > children.length){
+					int size = children.length;
+					children = Arrays.copyOf(children, 2 * size);
+					Arrays.fill(children, size, children.length, MISSING);
+				}
+				children[slot] = internal++;
+			}
+			else if (children[slot] < 0){
+				throw new IllegalArgumentException("Code of " + symbol + " is not prefix-free!");
+			}
+			node = children[slot];
+		}
+		int slot = 2 * node + (int) (code & 1);
+		if (children[slot] != MISSING){
+			throw new IllegalArgumentException("Code of " + symbol + " is not prefix-free!");
+		}
+		children[slot] = ~symbol;
+	}
+
+	/**
+	 * Flatten a tree of TreeNodes, e.g., one given to an IHuffDecoder.
+	 * @param root is the root of the tree
+	 * @return the flattened tree
+	 */
+	public static HuffFlatTree fromTree(TreeNode root){
+		if (root.isExternal()){
+			return new HuffFlatTree(new int[0], 0, root.myValue);
+		}
+		HuffFlatTree tree = new HuffFlatTree(new int[2 * ALPH_SIZE], 1, -1);
+		Arrays.fill(tree.children, MISSING);
+		tree.flatten(root, 0);
+		return tree;
+	}
+
+	private void flatten(TreeNode node, int index){
+		TreeNode[] pair = { node.myLeft, node.myRight };
+		for (int bit = 0; bit <= 1; bit++){
+			if (pair[bit] == null){
+				continue;
+			}
+			if (pair[bit].isExternal()){
+				children[2 * index + bit] = ~pair[bit].myValue;
+				continue;
+			}
+			if (2 * internal + 2 > children.length){
+				int size = children.length;
+				children = Arrays.copyOf(children, 2 * size);
+				Arrays.fill(children, size, children.length, MISSING);
+			}
+			children[2 * index + bit] = internal;
+			flatten(pair[bit], internal++);
+		}
+	}
+
+	/**
+	 * Read the tree of a tree header, written by HuffHeader.writeHelper in
+	 * preorder, 1 and a 9-bit value for a leaf and 0 for an internal node.
+	 * The slots still to be filled are kept on an array used as a stack.
+	 * @param in is the source of the bits, after the magic number
+	 * @return the tree read
+	 * @throws IOException if the bits run out or do not describe a tree of
+	 * at most ALPH_SIZE + 1 leaves, each a chunk or PSEUDO_EOF
+	 */
+	public static HuffFlatTree read(BitInputStream in) throws IOException{
+		int flag = in.read(1);
+		if (flag == 1){
+			return new HuffFlatTree(new int[0], 0, readLeaf(in));
+		}
+		if (flag != 0){
+			throw new IOException("Bad tree in header!");
+		}
+		int[] children = new int[INITIAL_NODES * 2]; // grown as needed, most trees are small
+		int[] pending = new int[INITIAL_NODES]; // slots to fill, the next on top
+		int top = 0;
+		int internal = 1;
+		pending[top++] = 1;
+		pending[top++] = 0;
+		while (top > 0){
+			int slot = pending[--top];
+			flag = in.read(1);
+			if (flag == 1){
+				children[slot] = ~readLeaf(in);
+			}
+			else if (flag == 0 && internal < ALPH_SIZE){
+				if (2 * internal + 2 > children.length){
+					children = Arrays.copyOf(children, 2 * children.length);
+				}
+				if (top + 2 > pending.length){
+					pending = Arrays.copyOf(pending, 2 * pending.length);
+				}
+				children[slot] = internal;
+				pending[top++] = 2 * internal + 1;
+				pending[top++] = 2 * internal;
+				internal++;
+			}
+			else{
+				throw new IOException("Bad tree in header!");
+			}
+		}
+		return new HuffFlatTree(children, internal, -1);
+	}
+
+	private static int readLeaf(BitInputStream in) throws IOException{
+		int value = in.read(VALUE_BITS);
+		if (value < 0 || value > PSEUDO_EOF){
+			throw new IOException("Bad tree in header!");
+		}
+		return value;
+	}
+
+	/**
+	 * @return the number of internal nodes, 0 for a single leaf
+	 */
+	public int internalNodes(){
+		return internal;
+	}
+
+	/**
+	 * @return the symbol of a tree that is a single leaf, -1 otherwise
+	 */
+	public int getSingleSymbol(){
+		return single;
+	}
+
+	/**
+	 * Returns the number of bits of the tree in a tree header, one per
+	 * internal node and ten per leaf.
+	 * @return the size of the tree written by HuffHeader
+	 */
+	public int headerBits(){
+		return internal + (1 + VALUE_BITS) * (internal + 1);
+	}
+
+	/**
+	 * Follow the bits of one code from the root to its leaf.
+	 * @param in is the source of the bits
+	 * @return the symbol of the code read
+	 * @throws IOException if the bits run out or lead nowhere
+	 */
+	public int decodeSymbol(BitInputStream in) throws IOException{
+		if (single != -1){
+			return single;
+		}
+		int node = 0;
+		while (true){
+			int bit = in.read(1);
+			if (bit == -1){
+				throw new IOException("Should not happen! Trouble reading bits!");
+			}
+			int child = children[2 * node + bit];
+			if (child < 0){
+				if (child == MISSING){
+					throw new IOException("Bits match no code!");
+				}
+				return ~child;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Fill in the code and code length of every leaf, walking the tree with
+	 * a stack of nodes instead of recursion. The code of a single leaf is
+	 * left empty.
+	 * @param codes is where the code of each symbol is stored in its rightmost bits
+	 * @param lengths is where the code length of each symbol is stored
+	 */
+	public void codes(long[] codes, int[] lengths){
+		if (internal == 0){
+			return;
+		}
+		int[] nodes = new int[internal];
+		long[] paths = new long[internal];
+		int[] depths = new int[internal];
+		int top = 0;
+		nodes[top++] = 0;
+		while (top > 0){
+			top--;
+			int node = nodes[top];
+			long path = paths[top];
+			int depth = depths[top] + 1;
+			for (int bit = 0; bit <= 1; bit++){
+				int child = children[2 * node + bit];
+				long code = (path << 1) | bit;
+				if (child >= 0){
+					nodes[top] = child;
+					paths[top] = code;
+					depths[top] = depth;
+					top++;
+				}
+				else if (child != MISSING){
+					codes[~child] = code;
+					lengths[~child] = depth;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the "0101" form of the code of every symbol, e.g., for
+	 * showing the codes, each string is made once from a shared path.
+	 * @param symbols is the size of the array returned
+	 * @return the code of each symbol, null for symbols without a code
+	 */
+	public String[] codeStrings(int symbols){
+		String[] strings = new String[symbols];
+		if (internal == 0){
+			if (single != -1){
+				strings[single] = "";
+			}
+			return strings;
+		}
+		char[] path = new char[internal];
+		codeStrings(0, 0, path, strings);
+		return strings;
+	}
+
+	private void codeStrings(int node, int depth, char[] path, String[] strings){
+		for (int bit = 0; bit <= 1; bit++){
+			int child = children[2 * node + bit];
+			path[depth] = (char) ('0' + bit);
+			if (child >= 0){
+				codeStrings(child, depth + 1, path, strings);
+			}
+			else if (child != MISSING){
+				strings[~child] = new String(path, 0, depth + 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the tree as TreeNodes, for callers of IHuffHeader.readHeader
+	 * @return the root
+	 */
+	public TreeNode toTreeNode(){
+		return internal == 0 ? new TreeNode(single, 0) : toTreeNode(0);
+	}
+
+	private TreeNode toTreeNode(int node){
+		TreeNode[] pair = new TreeNode[2];
+		for (int bit = 0; bit <= 1; bit++){
+			int child = children[2 * node + bit];
+			if (child >= 0){
+				pair[bit] = toTreeNode(child);
+			}
+			else if (child != MISSING){
+				pair[bit] = new TreeNode(~child, 0);
+			}
+		}
+		return new TreeNode(0, 0, pair[0], pair[1]);
+	}
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
   */
 public class HuffHeader implements IHuffHeader{
 	private int size;
+	private int[] codeLengths; // code lengths read from a canonical header, null otherwise
 	
 	CharCounter count;
 	/**
@@ -27,8 +28,9 @@ public class HuffHeader implements IHuffHeader{
 	}
 
 	/**
-     * The number of bits in the header using the implementation, including
-     * the magic number presumably stored.
+     * The number of bits in the last header written or read, including
+     * the magic number, so a caller reading from memory knows where the
+     * codes start.
      * @return the number of bits in the header
      */
 	@Override
@@ -43,9 +45,98 @@ public class HuffHeader implements IHuffHeader{
 	@Override
 	public void writeHeader(TreeNode root, BitOutputStream out) {
 		out.write(BITS_PER_INT, MAGIC_NUMBER);
-		size += BITS_PER_INT;
+		size = BITS_PER_INT; // the size of this header, not of all written
 		writeHelper(root, out);
 	}
+
+	/**
+     * Write a canonical header: the magic number followed by the code
+     * length of every chunk including PSEUDO_EOF. Runs of unused chunks are
+     * stored as one Elias-gamma coded run length and every other length as
+     * a gamma coded difference from the previous length, so typical headers
+     * take a few bits per chunk used.
+     * For an alphabet other than ALPH_SIZE chunks, e.g., 16-bit symbols,
+     * WIDE_MAGIC_NUMBER and the symbol width are written instead of the
+     * magic number. Since unused symbols cost only their share of a run the
+     * header stays small when few of the symbols occur.
+     * @param lengths is the code length of each chunk, 0 if unused
+     * @param out is where the header is written
+     */
+	@Override
+	public void writeHeader(int[] lengths, BitOutputStream out) {
+		int symbols = lengths.length - 1;
+		size = 0; // the size of this header, not of all written
+		if (symbols == ALPH_SIZE){
+			out.write(BITS_PER_INT, CANONICAL_MAGIC_NUMBER);
+			size += BITS_PER_INT;
+		}
+		else{
+			int width = BITS_PER_INT - 1 - Integer.numberOfLeadingZeros(symbols);
+			if (symbols != 1 << width || width > MAX_SYMBOL_BITS){
+				throw new IllegalArgumentException("Alphabet must have 2^k symbols, k at most "
+						+ MAX_SYMBOL_BITS + "!");
+			}
+			out.write(BITS_PER_INT, WIDE_MAGIC_NUMBER);
+			out.write(WIDTH_BITS, width);
+			size += BITS_PER_INT + WIDTH_BITS;
+		}
+		int previous = BITS_PER_WORD;
+		int i = 0;
+		while (i < lengths.length){
+			if (lengths[i] == 0){
+				int run = 0;
+				while (i < lengths.length && lengths[i] == 0){
+					run++;
+					i++;
+				}
+				out.write(1, 0);
+				size += 1 + writeGamma(run, out);
+			}
+			else{
+				int delta = lengths[i] - previous;
+				out.write(1, 1);
+				size += 1 + writeGamma(((delta << 1) ^ (delta >> 31)) + 1, out); // zigzag, then >= 1
+				previous = lengths[i];
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Write n >= 1 as an Elias-gamma code
+	 * @return the number of bits written
+	 */
+	private int writeGamma(int n, BitOutputStream out){
+		int bits = BITS_PER_INT - Integer.numberOfLeadingZeros(n);
+		if (bits > 1){
+			out.write(bits - 1, 0);
+		}
+		out.write(bits, n);
+		return 2 * bits - 1;
+	}
+
+	/**
+	 * Read an Elias-gamma code written by writeGamma
+	 */
+	private int readGamma(BitInputStream in) throws IOException{
+		int zeros = 0;
+		int bit;
+		while ((bit = in.read(1)) == 0){
+			zeros++;
+		}
+		if (bit == -1 || zeros >= BITS_PER_INT - 1){
+			throw new IOException("Bad code lengths in header!");
+		}
+		size += 2 * zeros + 1;
+		if (zeros == 0){
+			return 1;
+		}
+		int rest = in.read(zeros);
+		if (rest == -1){
+			throw new IOException("Bad code lengths in header!");
+		}
+		return (1 << zeros) | rest;
+	}
 	
 	/**
      * Read the header and return an ITreeMaker object corresponding to
@@ -61,30 +152,148 @@ public class HuffHeader implements IHuffHeader{
 	    if(node.isExternal()){
 	        out.write(1, 1);
 	        out.write(9, node.myValue);
+	        size += 1 + 9;
 	        return;
 	    }
 	    out.write(1, 0);
+	    size += 1;
 	    writeHelper(node.myLeft, out);
 	    writeHelper(node.myRight, out);
         
     }
 	@Override
 	public TreeNode readHeader(BitInputStream in) throws IOException {
+		HuffFlatTree tree = readFlatHeader(in);
+		return tree == null ? null : tree.toTreeNode();
+	}
+
+	/**
+	 * Read a header like readHeader, but a tree is read into a
+	 * HuffFlatTree straight from the header bits rather than a TreeNode
+	 * per node.
+	 * @param in is source of bits for header
+	 * @return the tree stored in the header, null for a canonical header,
+	 * whose code lengths are then returned by getCodeLengths
+	 * @throws IOException if the header is bad
+	 */
+	public HuffFlatTree readFlatHeader(BitInputStream in) throws IOException {
 		int check = in.read(BITS_PER_INT);
+		codeLengths = null;
+		size = BITS_PER_INT;
+		if (check == CANONICAL_MAGIC_NUMBER){
+			codeLengths = readCodeLengths(in, ALPH_SIZE);
+			return null;
+		}
+		if (check == WIDE_MAGIC_NUMBER){
+			int width = in.read(WIDTH_BITS);
+			size += WIDTH_BITS;
+			if (width < 1 || width > MAX_SYMBOL_BITS){
+				throw new IOException("Bad symbol width in header!");
+			}
+			codeLengths = readCodeLengths(in, 1 << width);
+			return null;
+		}
 		if (check != MAGIC_NUMBER){
 			throw new IOException("Magic number incorrect!");
 		}
-		return readHelper(in);
-		
+		HuffFlatTree tree = HuffFlatTree.read(in);
+		size += tree.headerBits();
+		return tree;
+	}
+
+	/**
+	 * Read the code lengths of a canonical header for symbols 0 to
+	 * symbols - 1 and PSEUDO_EOF, which is symbols, and check that they
+	 * describe a complete prefix code.
+	 */
+	private int[] readCodeLengths(BitInputStream in, int symbols) throws IOException{
+		int[] lengths = new int[symbols + 1];
+		int previous = BITS_PER_WORD;
+		int i = 0;
+		while (i < lengths.length){
+			int flag = in.read(1);
+			if (flag == -1){
+				throw new IOException("Bad code lengths in header!");
+			}
+			size++;
+			if (flag == 0){
+				int run = readGamma(in);
+				if (run > lengths.length - i){
+					throw new IOException("Bad code lengths in header!");
+				}
+				i += run;
+			}
+			else{
+				int zigzag = readGamma(in) - 1;
+				previous += (zigzag >>> 1) ^ -(zigzag & 1);
+				if (previous <= 0 || previous > MAX_CODE_LENGTH){
+					throw new IOException("Bad code lengths in header!");
+				}
+				lengths[i++] = previous;
+			}
+		}
+		if (i != lengths.length || !isCompleteCode(lengths)){
+			throw new IOException("Bad code lengths in header!");
+		}
+		return lengths;
+	}
+
+	/**
+	 * Returns true if code lengths describe a complete prefix code that
+	 * can be decoded: every length is 0 to MAX_CODE_LENGTH, PSEUDO_EOF,
+	 * the last entry, has a code and the Kraft sum is exactly one, except
+	 * for a lone one-bit code.
+	 * @param lengths is the code length of each symbol, 0 if unused
+	 * @return true if the lengths can be written in a canonical header
+	 */
+	public static boolean isCompleteCode(int[] lengths){
+		if (lengths.length == 0 || lengths[lengths.length - 1] == 0){
+			return false;
+		}
+		long kraft = 0;
+		int used = 0;
+		for (int length : lengths){
+			if (length < 0 || length > MAX_CODE_LENGTH){
+				return false;
+			}
+			if (length > 0){
+				kraft += 1L << (MAX_CODE_LENGTH - length);
+				used++;
+				if (kraft > 1L << MAX_CODE_LENGTH){
+					return false;
+				}
+			}
+		}
+		return kraft == 1L << MAX_CODE_LENGTH || (used == 1 && lengths[lengths.length - 1] == 1);
+	}
+
+	/**
+	 * Returns true if the last header read stored code lengths
+	 * rather than a tree.
+	 * @return true if the last header read was canonical
+	 */
+	public boolean isCanonical(){
+		return codeLengths != null;
+	}
+
+	/**
+	 * Returns the code lengths read from the last canonical header.
+	 * @return code length of each chunk including PSEUDO_EOF, which is the
+	 * last entry, or null if the last header read stored a tree
+	 */
+	public int[] getCodeLengths(){
+		return codeLengths;
 	}
     @Override
     public TreeNode readHelper(BitInputStream in) throws IOException {
         // TODO Auto-generated method stub
         int flag = in.read(1);
-        if(flag == 1)
+        if(flag == 1){
+            size += 1 + 9;
             return(new TreeNode(in.read(9), 0, null, null));
-        else
-            return(new TreeNode(0, 0, readHelper(in), readHelper(in)));
+        }
+        size += 1;
+        return(new TreeNode(0, 0, readHelper(in), readHelper(in)));
         
     }
  
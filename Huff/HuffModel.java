@@ -1,45 +1,95 @@
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 /**
  * The class that implements the IHuffModel interface
  * All HuffViewer selections compress/uncompress/show char/codings are handled by this class.
+ * Between calls only the settings and the counts and coding table of the
+ * last initialize are kept, headers, trees and decoders are made per call,
+ * so a model can compress and uncompress any number of times. Threads
+ * coding concurrently should each use a model, or share a HuffCodec.
  * @author Zifan Yang
  *
  */
 public class HuffModel implements IHuffModel {
+	private static final int BUFFER_SIZE = 1 << 16; // bytes read from the stream per call
+	private static final long MAP_SIZE = 1L << 30; // bytes of a file mapped at a time
 	private CharCounter count; // counter for characters 
 	private ArrayList<String> countList; // list of character counts
 	private ArrayList<String> codingList;// list of codings
-	private TreeMaker tree; // Tree maker for creating the huffman tree
     private HuffViewer view; // The user interface
-    private HuffHeader header;// Handles writing/reading header to/from a file
-    private HuffEncoder encoder; // Used to create the coding table
-    private HuffDecoder decoder; // used to uncompress information after the header
-    private int initialSize; // The initial size of the file
+    private HuffEncoder encoder; // Used to create the coding table, shared through HuffTableCache
+    private long initialSize; // The initial size of the file in bits
+    private boolean canonical; // write canonical code lengths instead of the tree
+    private int blockSize; // bytes per block when writing block files, 0 for one block
+    private int threads; // number of blocks compressed at the same time
+    private int maxLength; // longest code allowed, 0 for no limit
+    private boolean interleaved; // split the codes of each block across streams
+    private int symbolBits = BITS_PER_WORD; // width of the symbols of block files
+    private boolean contexts; // code the bytes of each block with order-1 context tables
+    private boolean stored; // store data that does not compress instead of failing
+    private boolean counted; // initialize has been called
 	HuffModel(){
 		count = new CharCounter();
 		countList = new ArrayList<String>();
 		codingList = new ArrayList<String>();
-		tree = new TreeMaker();
 		encoder = new HuffEncoder();
-		decoder = new HuffDecoder();
-		header = new HuffHeader(count);
 	}
     /**
-     * Display all encodings (via the associated view).
+     * Display all encodings (via the associated view). The codes are read
+     * off the flattened tree of the coding table, the same tree a decoder
+     * follows, in one walk rather than a string built per lookup.
      */
     public void showCodings(){
     	codingList.clear();
+    	long[] codes = new long[IHuffHeader.ALPH_SIZE + 1];
+    	int[] lengths = encoder.getCodeLengths();
+    	for (int i = 0; i < codes.length; i++){
+    		codes[i] = encoder.getCodeBits(i);
+    	}
+    	String[] strings = new HuffFlatTree(codes, lengths).codeStrings(codes.length);
     	for (int i = 0; i < IHuffHeader.ALPH_SIZE; i++){
-    		if (encoder.getCode(i) != "")// Show codings only for character appeared at least once
-    			codingList.add(i + " " + encoder.getCode(i) );
+    		if (strings[i] != null)// Show codings only for character appeared at least once
+    			codingList.add(i + " " + strings[i]);
+    	}
+    	if (encoder.getLimitCost() > 0){
+    		codingList.add("Codes limited to " + maxLength + " bits: " + encoder.getLimitCost()
+    				+ " more bits than unlimited codes (" + String.format("%.3f", 100.0 * encoder.getLimitCost()
+    				/ (unlimitedBits())) + "%)");
     	}
     	view.update(codingList);
     }
     
+    /**
+     * Returns the number of bits the coded data would take without the
+     * code length limit
+     */
+    private long unlimitedBits(){
+    	long bits = encoder.getCodeLength(PSEUDO_EOF);
+    	for (int i = 0; i < IHuffHeader.ALPH_SIZE; i++){
+    		bits += (long) count.getCount(i) * encoder.getCodeLength(i);
+    	}
+    	return bits - encoder.getLimitCost();
+    }
+    
+    /**
+     * Returns the number of bits the code length limit adds to the file
+     * last initialized, 0 if no code was too long.
+     * @return extra bits compared with unlimited Huffman codes
+     */
+    public long getLimitCost(){
+    	return encoder.getLimitCost();
+    }
+    
     /**
      * Display all chunk/character counts (via the associated view).
      */
@@ -61,15 +111,61 @@ public class HuffModel implements IHuffModel {
      */
     public void initialize(InputStream stream) throws IOException{
     	initialSize = count.countAll(stream);// Get the initial size for comparison later
+    	makeTree();
+    }
+    
+    /**
+     * Initialize state from a file, which is memory-mapped and counted
+     * in parallel rather than read through a stream.
+     * @param file is the file for initializing state of this model
+     * @throws IOException if the reading fails
+     */
+    public void initialize(File file) throws IOException{
+    	initialSize = count.countAll(file.toPath());
+    	makeTree();
+    }
+    
+    /**
+     * Get the coding table for the counts from HuffTableCache, which only
+     * builds the tree if no similar histogram was coded before
+     */
+    private void makeTree(){
+    	int[] counts = new int[IHuffHeader.ALPH_SIZE];
+    	for (int i = 0; i < counts.length; i++){
+    		counts[i] = count.getCount(i);
+    	}
+    	encoder = HuffTableCache.encoder(counts, canonical, maxLength);
+    	counted = true;
+    }
+    
+    /**
+     * Returns the exact number of bits write would produce for the data
+     * last initialized, header included, computed from the counts and the
+     * code lengths without coding anything.
+     * @return the size of the compressed data in bits, before padding
+     */
+    public long predictSize(){
+    	long bits = writeHeader(new BitOutputStream(OutputStream.nullOutputStream()));
+    	bits += encoder.getCodeLength(PSEUDO_EOF);
     	for (int i = 0; i < IHuffHeader.ALPH_SIZE; i++){
-    		if (count.getCount(i) > 0)// only include characters appeared at least once
-    			tree.addNode(i, count.getCount(i));
+    		bits += (long) count.getCount(i) * encoder.getCodeLength(i);
+    	}
+    	return bits;
+    }
     
+    /**
+     * Returns true if the data last initialized should be coded, false if
+     * it should be stored. Nothing has been written when this is decided.
+     * @throws IOException if coding does not save space and neither force
+     * nor stored files allow writing it
+     */
+    private boolean shouldCode(boolean force) throws IOException{
+    	if (force){
+    		return true;
     	}
-    	tree.addNode(PSEUDO_EOF, 1);// add PSEUDO_EOF node
-    	
-    	encoder.makeTable(tree);// make the table needed for displaying and compressing
-    	
+    	long sizeChange = predictSize() - initialSize;
+    	checkSize(sizeChange, force);
+    	return sizeChange <= 0;
     }
     
     /**
@@ -85,53 +181,300 @@ public class HuffModel implements IHuffModel {
      * @throws IOException if the I/O fails or force compression is required
      */
     public void write(InputStream stream, File file, boolean force) throws IOException{
-    	int beforeSize = initialSize;
-    	int afterSize = 0;
-    	int sizeChange = 0;
-    	int bits = 0;
-    	String charCoding = "";
+    	boolean code;
+    	try{
+    		code = shouldCode(force);
+    	}
+    	catch (IOException e){
+    		stream.close();
+    		throw e;
+    	}
     	BitOutputStream out = new BitOutputStream(file.getCanonicalPath());
-    	// write header
-    	header.writeHeader(tree.root, out);
-    	afterSize += header.headerSize();
+    	if (!code){
+    		out.write(BITS_PER_INT, STORED_MAGIC_NUMBER);
+    		stream.transferTo(out);
+    		stream.close();
+    		out.close();
+    		return;
+    	}
+    	byte[] buffer = new byte[BUFFER_SIZE];
+    	int n = 0;
+    	writeHeader(out);
     	
-    	// Compress using the encoder table
-    	while((bits = stream.read()) != -1){
-    		charCoding = encoder.getCode(bits);
-    		for (int i = 0; i < charCoding.length(); i++){
-    			if (charCoding.charAt(i) == '0'){
-    				out.write(1, 0);
-    			}
-    			else{
-    				out.write(1, 1);
-    			}
+    	// Compress using the encoder table, one call per chunk
+    	while((n = stream.read(buffer)) != -1){
+    		for (int i = 0; i < n; i++){
+    			encoder.writeCode(buffer[i] & 0xff, out);
     		}
-    		afterSize += charCoding.length();
     	}
     	//add the PSEUDO_EOF char in the end
-    	charCoding = encoder.getCode(ALPH_SIZE);
-		for (int i = 0; i < charCoding.length(); i++){
-			if (charCoding.charAt(i) == '0'){
-				out.write(1, 0);
-			}
-			else{
-				out.write(1, 1);
-			}
-		}
-		afterSize += charCoding.length();
+    	encoder.writeCode(PSEUDO_EOF, out);
 		
-		// Calculate if the compressed file uses more bits
-    	sizeChange = afterSize - initialSize;
     	stream.close();
     	out.close();
-    	
-    	
-    	// Prompt the user to use force compression if the compressed file is larger
-    	if (force == false && sizeChange > 0){
+    }
+    
+    /**
+     * Compress a stream in a single pass, for input such as a pipe that
+     * cannot be read a second time. No initialize call is needed, the data
+     * is compressed a bounded block at a time in the block file format
+     * using the block size from setBlocks.
+     * @param in is the data to be compressed, it is closed when done
+     * @param out is where the compressed data is written, it is closed when done
+     * @return the number of bytes written
+     * @throws IOException if the I/O fails
+     */
+    public long compress(InputStream in, OutputStream out) throws IOException{
+    	HuffBlockCompressor compressor = new HuffBlockCompressor(
+    			blockSize > 0 ? blockSize : HuffBlockCompressor.DEFAULT_BLOCK_SIZE, 1);
+    	compressor.setMaxCodeLength(maxLength);
+    	compressor.setInterleaved(interleaved);
+    	compressor.setSymbolBits(symbolBits);
+    	compressor.setContexts(contexts);
+    	try{
+    		return compressor.compress(in, out);
+    	}
+    	finally{
+    		in.close();
+    		out.close();
+    	}
+    }
+    
+    /**
+     * Compress a buffer in memory. The bytes are counted and coded in
+     * place with a HuffCodec for their counts, using the code length limit
+     * from setMaxCodeLength. The result is the same as a file written with
+     * canonical headers, so it can also be uncompressed as a stream. Data
+     * that would not shrink is always stored, STORED_MAGIC_NUMBER and the
+     * bytes, so maxCompressedSize holds whatever the data. Only settings
+     * are read, threads may compress with one model as long as none of
+     * them changes its settings.
+     * @param src is the data to be compressed, its position moves to its limit
+     * @param dst is where the compressed data is written, its position moves
+     * past it
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the compressed data does not fit
+     * in dst, in which case neither position has moved
+     */
+    public int compress(ByteBuffer src, ByteBuffer dst){
+    	int[] counts = CharCounter.count(src);
+    	HuffCodec codec = HuffCodec.fromCounts(counts, maxLength);
+    	long size = (codec.headerBits() + codec.encodedBits(counts) + BITS_PER_WORD - 1) / BITS_PER_WORD;
+    	int len = src.remaining();
+    	if (size < maxCompressedSize(len)){
+    		return codec.encode(src, dst, true);
+    	}
+    	if (dst.remaining() < maxCompressedSize(len)){
+    		throw new IllegalArgumentException("Compressed data does not fit!");
+    	}
+    	for (int shift = BITS_PER_INT - BITS_PER_WORD; shift >= 0; shift -= BITS_PER_WORD){
+    		dst.put((byte) (STORED_MAGIC_NUMBER >>> shift)); // big-endian whatever the order of dst
+    	}
+    	dst.put(src);
+    	return (int) maxCompressedSize(len);
+    }
+    
+    /**
+     * Returns the most bytes compress(ByteBuffer, ByteBuffer) can write for
+     * len bytes, the size of the data stored.
+     * @param len is the length of the data
+     * @return the bound
+     */
+    public long maxCompressedSize(int len){
+    	return len + (long) BITS_PER_INT / BITS_PER_WORD;
+    }
+    
+    /**
+     * Write a compressed version of a file. The input is memory-mapped a
+     * window at a time and encoded straight from the mapped memory, the
+     * output is written through the file's channel. If setBlocks was called
+     * the file is written as independent blocks compressed in parallel.
+     * Whether coding saves space is known from the counts before anything
+     * is written, a file that would not shrink is stored if setStored was
+     * called, otherwise nothing is written. Block files store each block
+     * that does not shrink on its own, so their size is only known once
+     * written, and a block file that grew is deleted before the IOException
+     * is thrown unless force or setStored is on.
+     * @param input is the file to be compressed
+     * @param file specifes the file to be written with compressed data
+     * @param force indicates if compression forced
+     * @throws IOException if the I/O fails or force compression is required
+     */
+    public void write(File input, File file, boolean force) throws IOException{
+    	if (blockSize > 0){
+    		HuffBlockCompressor compressor = new HuffBlockCompressor(blockSize, threads);
+    		compressor.setMaxCodeLength(maxLength);
+    		compressor.setInterleaved(interleaved);
+    		compressor.setSymbolBits(symbolBits);
+    		compressor.setContexts(contexts);
+    		long sizeChange = (compressor.compress(input, file) - input.length()) * BITS_PER_WORD;
+    		try{
+    			checkSize(sizeChange, force);
+    		}
+    		catch (IOException e){
+    			Files.deleteIfExists(file.toPath()); // no block file is left behind that grew
+    			throw e;
+    		}
+    		return;
+    	}
+    	if (!shouldCode(force)){
+    		writeStored(input, file);
+    		return;
+    	}
+    	try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+    		 FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+    				 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+    		BitOutputStream out = new BitOutputStream(Channels.newOutputStream(channel));
+    		writeHeader(out);
+    		long size = in.size();
+    		for (long start = 0; start < size; start += MAP_SIZE){
+    			ByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY,
+    					start, Math.min(MAP_SIZE, size - start));
+    			int limit = map.limit();
+    			for (int i = 0; i < limit; i++){
+    				encoder.writeCode(map.get(i) & 0xff, out);
+    			}
+    		}
+    		encoder.writeCode(PSEUDO_EOF, out);
+    		out.flush();
+    	}
+    }
+    
+    /**
+     * Write a stored file, STORED_MAGIC_NUMBER followed by the bytes of
+     * input copied channel to channel
+     */
+    private void writeStored(File input, File file) throws IOException{
+    	try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+    		 FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+    				 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+    		ByteBuffer magic = ByteBuffer.allocate(BITS_PER_INT / BITS_PER_WORD).putInt(0, STORED_MAGIC_NUMBER);
+    		while (magic.hasRemaining()){
+    			channel.write(magic);
+    		}
+    		transfer(in, 0, channel);
+    	}
+    }
+    
+    /**
+     * Copy in from position to its end onto the end of out
+     */
+    private static void transfer(FileChannel in, long position, FileChannel out) throws IOException{
+    	long size = in.size();
+    	while (position < size){
+    		long n = in.transferTo(position, size - position, out);
+    		if (n <= 0){
+    			throw new IOException("Could not copy stored data!");
+    		}
+    		position += n;
+    	}
+    }
+    
+    /**
+     * Write the header in the format chosen with setCanonical
+     * @return the number of bits written
+     */
+    private long writeHeader(BitOutputStream out){
+    	HuffHeader header = new HuffHeader(); // counts the bits of this header only
+    	if (canonical){
+    		header.writeHeader(encoder.getCodeLengths(), out);
+    	}
+    	else{
+    		header.writeHeader(encoder.getCodeTree(), out);
+    	}
+    	return header.headerSize();
+    }
+    
+    /**
+     * Prompt the user to use force compression if the compressed file is larger
+     * @param sizeChange is the number of bits compression adds
+     * @throws IOException if the compressed file is larger and neither force
+     * nor stored files are on
+     */
+    private void checkSize(long sizeChange, boolean force) throws IOException{
+    	if (force == false && stored == false && sizeChange > 0){
     		throw new IOException("Compression uses " + sizeChange + " more bits! Use Force Compression instead!");
     	}
     }
     
+    /**
+     * Choose the header format of files written from now on.
+     * @param canonical true to store canonical code lengths, false to store the tree
+     */
+    public void setCanonical(boolean canonical){
+    	this.canonical = canonical;
+    	if (counted){
+    		makeTree();
+    	}
+    }
+    
+    /**
+     * Limit the length of the codes of files written from now on.
+     * @param maxLength is the longest code allowed, 0 for no limit
+     * @throws IllegalArgumentException if maxLength is not 0 or 9 to MAX_CODE_LENGTH
+     */
+    public void setMaxCodeLength(int maxLength){
+    	HuffBlockCompressor.checkSettings(maxLength, symbolBits);
+    	this.maxLength = maxLength;
+    	if (counted){
+    		makeTree();
+    	}
+    }
+    
+    /**
+     * Choose whether files compressed with write(File, File, boolean) are
+     * made of independent blocks compressed on several threads.
+     * @param blockSize is the number of input bytes per block, 0 for a single block
+     * @param threads is the number of blocks compressed at the same time
+     */
+    public void setBlocks(int blockSize, int threads){
+    	this.blockSize = blockSize;
+    	this.threads = threads;
+    }
+    
+    /**
+     * Choose whether the blocks of block files written from now on split
+     * their codes across interleaved streams that decode faster.
+     * @param interleaved true to write interleaved blocks
+     */
+    public void setInterleaved(boolean interleaved){
+    	this.interleaved = interleaved;
+    }
+    
+    /**
+     * Choose whether data that compression would not shrink is written as
+     * a stored file, a magic number followed by the data, instead of
+     * failing. Block files always store such blocks, this only decides
+     * whether a block file that still grew is an error.
+     * @param stored true to store data that does not compress
+     */
+    public void setStored(boolean stored){
+    	this.stored = stored;
+    }
+    
+    /**
+     * Choose whether the bytes of block files written from now on are coded
+     * with a table chosen by the byte before them, which takes less space
+     * for text and logs.
+     * @param contexts true to write order-1 context blocks
+     */
+    public void setContexts(boolean contexts){
+    	this.contexts = contexts;
+    }
+    
+    /**
+     * Choose the width of the symbols coded in block files written from
+     * now on. Files written as a single stream always use BITS_PER_WORD bit
+     * chunks, as their tree header stores 9-bit leaves.
+     * @param symbolBits is BITS_PER_WORD or 16
+     * @throws IllegalArgumentException for other widths, checked together
+     * with the code length limit
+     */
+    public void setSymbolBits(int symbolBits){
+    	HuffBlockCompressor.checkSettings(maxLength, symbolBits);
+    	this.symbolBits = symbolBits;
+    }
+    
     /**
      * Make sure this model communicates with some view.
      * @param viewer is the view for communicating.
@@ -149,9 +492,117 @@ public class HuffModel implements IHuffModel {
     public void uncompress(InputStream in, OutputStream out) throws IOException{
     	BitInputStream input = new BitInputStream(in);
     	BitOutputStream output = new BitOutputStream(out);
-    	
-    	tree.root = header.readHeader(input); // Get header info
-    	decoder.initialize(tree);// recreate the huffman tree
-    	decoder.doDecode(input, output);// uncompress
+    	decode(input, output);
+    }
+    
+    /**
+     * Uncompress a previously compressed file, reading it through a
+     * memory mapping and writing the output through the file's channel.
+     * Compressed files too large to map in one piece are read as a stream.
+     * Block files are decompressed in parallel using their block index.
+     * @param in is the compressed file to be uncompressed
+     * @param out is the file where the uncompressed bits will be written
+     * @throws IOException  if bad header is read or PSEUDO_EOF missing
+     */
+    public void uncompress(File in, File out) throws IOException{
+    	int magic = readMagic(in);
+    	if (magic == BLOCK_MAGIC_NUMBER){
+    		new HuffBlockCompressor(HuffBlockCompressor.DEFAULT_BLOCK_SIZE,
+    				threads > 0 ? threads : Runtime.getRuntime().availableProcessors()).decompress(in, out);
+    		return;
+    	}
+    	try (FileChannel source = FileChannel.open(in.toPath(), StandardOpenOption.READ);
+    		 FileChannel channel = FileChannel.open(out.toPath(), StandardOpenOption.WRITE,
+    				 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+    		if (magic == STORED_MAGIC_NUMBER){
+    			transfer(source, BITS_PER_INT / BITS_PER_WORD, channel);
+    			return;
+    		}
+    		BitInputStream input;
+    		if (source.size() <= Integer.MAX_VALUE){
+    			input = new BitInputStream(source.map(FileChannel.MapMode.READ_ONLY, 0, source.size()));
+    		}
+    		else{
+    			input = new BitInputStream(new FileInputStream(in));
+    		}
+    		decode(input, new BitOutputStream(Channels.newOutputStream(channel)));
+    	}
+    }
+    
+    /**
+     * Uncompress data held in memory, written by compress(ByteBuffer,
+     * ByteBuffer) or a compressed file with one header, read in place and
+     * decoded straight into dst. Block files are uncompressed from files
+     * or streams.
+     * @param src is the compressed data, its position moves to its limit
+     * @param dst is where the uncompressed data is written, its position
+     * moves past it
+     * @return the number of bytes written
+     * @throws IOException if the data is bad, is a block file or does not
+     * fit in dst, in which case neither position has moved
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException{
+    	BitInputStream input = new BitInputStream(src);
+    	int magic = input.peekBits(BITS_PER_INT);
+    	int start = src.position();
+    	if (magic == BLOCK_MAGIC_NUMBER){
+    		throw new IOException("Block files must be uncompressed from a file or stream!");
+    	}
+    	if (magic == STORED_MAGIC_NUMBER && src.remaining() >= BITS_PER_INT / BITS_PER_WORD){
+    		int len = src.remaining() - BITS_PER_INT / BITS_PER_WORD;
+    		if (dst.remaining() < len){
+    			throw new IOException("Decoded data does not fit!");
+    		}
+    		dst.put(dst.position(), src, start + BITS_PER_INT / BITS_PER_WORD, len);
+    		src.position(src.limit());
+    		dst.position(dst.position() + len);
+    		return len;
+    	}
+    	HuffHeader header = new HuffHeader();
+    	HuffTableDecoder decoder = readDecoder(input, header);
+    	int skip = header.headerSize() / BITS_PER_WORD;
+    	int n = decoder.decode(src, start + skip, src.remaining() - skip, header.headerSize() % BITS_PER_WORD,
+    			dst, dst.position(), dst.remaining());
+    	src.position(src.limit());
+    	dst.position(dst.position() + n);
+    	return n;
+    }
+    
+    /**
+     * Returns the magic number the file starts with, 0 if it is too short
+     */
+    private int readMagic(File file) throws IOException{
+    	try (DataInputStream in = new DataInputStream(new FileInputStream(file))){
+    		return file.length() >= BITS_PER_INT / BITS_PER_WORD ? in.readInt() : 0;
+    	}
+    }
+    
+    /**
+     * Read the header and decode the rest of the input
+     */
+    private void decode(BitInputStream input, BitOutputStream output) throws IOException{
+    	if (input.peekBits(BITS_PER_INT) == BLOCK_MAGIC_NUMBER){
+    		HuffBlockCompressor.decompress(input, output);
+    		return;
+    	}
+    	if (input.peekBits(BITS_PER_INT) == STORED_MAGIC_NUMBER){
+    		input.skipBits(BITS_PER_INT);
+    		input.transferTo(output);
+    		input.close();
+    		output.close();
+    		return;
+    	}
+    	readDecoder(input, new HuffHeader()).doDecode(input, output);// uncompress
+    }
+    
+    /**
+     * Read a header with header and return a decoder for its codes
+     */
+    private static HuffTableDecoder readDecoder(BitInputStream input, HuffHeader header) throws IOException{
+    	HuffFlatTree tree = header.readFlatHeader(input); // Get header info
+    	if (header.isCanonical()){
+    		return HuffTableCache.decoder(header.getCodeLengths());// canonical codes from the lengths
+    	}
+    	return HuffTableCache.decoder(tree);// the huffman tree, read without a node per bit
     }
 }
@@ -0,0 +1,247 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+/**
+ * A bounded cache of coding tables with least recently used eviction, so
+ * jobs over many files or blocks with near-identical distributions skip
+ * building trees and decode tables. ENCODERS holds encoders keyed by a
+ * quantized histogram: the ideal code length of every chunk used, the log
+ * of the total over its count, rounded to 1/FINGERPRINT_STEPS bit, and the
+ * log of the total rounded the same way. The set of chunks used stays
+ * exact, so a cached encoder has a code for every chunk of the data even
+ * when the data's histogram differs slightly, which costs far less than a
+ * bit per chunk. An encoder is built from representative counts made from
+ * its key alone, not from the counts of whichever caller missed first, so
+ * the codes, and with them the output, never depend on what was
+ * compressed before or on the order threads ran in. DECODERS holds
+ * decoders keyed by the code lengths of a header, and for tree headers the
+ * codes as well, so only equal headers share a decoder.
+ * <P>
+ * The cache can be used from any number of threads. Cached encoders and
+ * decoders are handed out as copies, so changing an encoder's settings or
+ * decoding with a decoder never touches the cached table. Tables for
+ * 16-bit symbols are too large to keep and are never cached.
+ * @author Zifan Yang
+ *
+ */
+public class HuffTableCache<V> implements IHuffConstants {
+	public static final int DEFAULT_CAPACITY = 256;
+	/**
+	 * Steps per bit the ideal code length of each chunk is rounded to in
+	 * an encoder key
+	 */
+	public static final int FINGERPRINT_STEPS = 2;
+
+	public static final HuffTableCache<HuffEncoder> ENCODERS = new HuffTableCache<HuffEncoder>(DEFAULT_CAPACITY);
+	public static final HuffTableCache<HuffTableDecoder> DECODERS = new HuffTableCache<HuffTableDecoder>(DEFAULT_CAPACITY);
+
+	private final LinkedHashMap<Key, V> map;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Cache keys, compared by content
+	 */
+	private static final class Key {
+		private final int[] ints;
+		private final long[] longs; // null if unused
+		private final int hash;
+
+		Key(int[] ints, long[] longs){
+			this.ints = ints;
+			this.longs = longs;
+			hash = 31 * Arrays.hashCode(ints) + Arrays.hashCode(longs);
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other){
+			if (!(other instanceof Key)){
+				return false;
+			}
+			Key key = (Key) other;
+			return hash == key.hash && Arrays.equals(ints, key.ints) && Arrays.equals(longs, key.longs);
+		}
+	}
+
+	/**
+	 * @param capacity is the most entries kept
+	 * @throws IllegalArgumentException if capacity is not positive
+	 */
+	public HuffTableCache(final int capacity){
+		if (capacity <= 0){
+			throw new IllegalArgumentException("Cache capacity must be positive!");
+		}
+		map = new LinkedHashMap<Key, V>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, V> eldest){
+				return size() > capacity;
+			}
+		};
+	}
+
+	private synchronized V get(Key key){
+		V value = map.get(key);
+		if (value == null){
+			misses++;
+		}
+		else{
+			hits++;
+		}
+		return value;
+	}
+
+	private synchronized void put(Key key, V value){
+		map.put(key, value);
+	}
+
+	/**
+	 * @return the number of lookups that found a table
+	 */
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that had to build a table
+	 */
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	/**
+	 * @return the number of tables kept
+	 */
+	public synchronized int size(){
+		return map.size();
+	}
+
+	/**
+	 * Drop every table and reset the counters
+	 */
+	public synchronized void clear(){
+		map.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * Returns an encoder for the counts of the ALPH_SIZE chunks and a
+	 * PSEUDO_EOF of weight one, made from the table in ENCODERS if a
+	 * histogram that quantizes the same was coded with the same settings
+	 * before. Its limit cost is measured for counts.
+	 * @param counts is the count of each chunk
+	 * @param canonical true if canonical codes are assigned
+	 * @param maxLength is the longest code allowed, 0 for no limit
+	 * @return an encoder of its own
+	 */
+	public static HuffEncoder encoder(int[] counts, boolean canonical, int maxLength){
+		long total = 0;
+		for (int n : counts){
+			total += n;
+		}
+		int[] ints = new int[counts.length + 3];
+		for (int i = 0; i < counts.length; i++){
+			ints[i] = counts[i] == 0 ? 0 : 1 + steps((double) total / counts[i]);
+		}
+		ints[counts.length] = steps(Math.max(total, 1));
+		ints[counts.length + 1] = canonical ? 1 : 0;
+		ints[counts.length + 2] = maxLength;
+		Key key = new Key(ints, null);
+		HuffEncoder encoder = ENCODERS.get(key);
+		if (encoder == null){
+			TreeMaker tree = new TreeMaker();
+			int[] representative = representativeCounts(ints, counts.length);
+			for (int i = 0; i < counts.length; i++){
+				if (representative[i] > 0){
+					tree.addNode(i, representative[i]);
+				}
+			}
+			tree.addNode(PSEUDO_EOF, 1);
+			encoder = new HuffEncoder();
+			encoder.setCanonical(canonical);
+			encoder.setMaxCodeLength(maxLength);
+			encoder.makeTable(tree);
+			ENCODERS.put(key, encoder);
+		}
+		HuffEncoder copy = encoder.copy();
+		copy.measureLimitCost(counts);
+		return copy;
+	}
+
+	/**
+	 * Returns log2(x) rounded to 1/FINGERPRINT_STEPS bit, in steps
+	 */
+	private static int steps(double x){
+		return (int) Math.round(FINGERPRINT_STEPS * Math.log(x) / Math.log(2));
+	}
+
+	/**
+	 * Returns counts that quantize to the key of an encoder: each chunk
+	 * used counts 2^(rounded log of the total - its rounded ideal length),
+	 * at least one and at most Integer.MAX_VALUE.
+	 * @param ints is the key, the steps of each chunk followed by those of the total
+	 * @param symbols is the number of chunks in the key
+	 */
+	private static int[] representativeCounts(int[] ints, int symbols){
+		int[] counts = new int[symbols];
+		for (int i = 0; i < symbols; i++){
+			if (ints[i] > 0){
+				double count = Math.pow(2, (double) (ints[symbols] - (ints[i] - 1)) / FINGERPRINT_STEPS);
+				counts[i] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(count)));
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns a decoder for the code lengths of a canonical header, sharing
+	 * the tables in DECODERS if the same lengths were decoded before.
+	 * @param lengths is the code length of each symbol including PSEUDO_EOF
+	 * @return a decoder of its own
+	 */
+	public static HuffTableDecoder decoder(int[] lengths){
+		if (lengths.length != ALPH_SIZE + 1){
+			HuffTableDecoder decoder = new HuffTableDecoder(); // wide tables are not kept
+			decoder.initialize(lengths);
+			return decoder;
+		}
+		Key key = new Key(lengths.clone(), null);
+		HuffTableDecoder decoder = DECODERS.get(key);
+		if (decoder == null){
+			decoder = new HuffTableDecoder();
+			decoder.initialize(lengths);
+			DECODERS.put(key, decoder);
+		}
+		return decoder.copy();
+	}
+
+	/**
+	 * Returns a decoder for the tree of a tree header, sharing the tables in
+	 * DECODERS if a tree with the same codes was decoded before.
+	 * @param tree is the tree read
+	 * @return a decoder of its own
+	 */
+	public static HuffTableDecoder decoder(HuffFlatTree tree){
+		if (tree.getSingleSymbol() != -1){
+			HuffTableDecoder decoder = new HuffTableDecoder(); // a lone leaf has no codes to key by
+			decoder.initialize(tree);
+			return decoder;
+		}
+		int[] lengths = new int[ALPH_SIZE + 1];
+		long[] codes = new long[ALPH_SIZE + 1];
+		tree.codes(codes, lengths);
+		Key key = new Key(lengths, codes);
+		HuffTableDecoder decoder = DECODERS.get(key);
+		if (decoder == null){
+			decoder = new HuffTableDecoder();
+			decoder.initialize(tree);
+			DECODERS.put(key, decoder);
+		}
+		return decoder.copy();
+	}
+}
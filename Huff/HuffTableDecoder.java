@@ -0,0 +1,637 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+/**
+ * A table-driven implementation of the IHuffDecoder interface
+ * Instead of following the coding tree one bit at a time, the codes are
+ * expanded into a lookup table indexed by the next PRIMARY_BITS bits of input,
+ * which are looked at with BitInputStream.peekBits and only the bits of the
+ * code found are consumed.
+ * Each lookup resolves a whole symbol, codes longer than the primary width
+ * continue into secondary tables indexed by the following bits.
+ * When codes are short a second table, indexed by the same bits, holds up
+ * to MULTI_SYMBOLS symbols whose codes all fit in the bits looked at, so one
+ * lookup emits several bytes. Entries that cannot hold more than one symbol,
+ * long codes and PSEUDO_EOF fall back to the single-symbol tables.
+ * Tables built from the code lengths of a wide header decode 16-bit
+ * symbols with decodeWide, two bytes per lookup.
+ * The output is the same as HuffDecoder's for every compressed file.
+ * @author Zifan Yang
+ *
+ */
+public class HuffTableDecoder implements IHuffDecoder {
+	/**
+	 * Maximum number of bits used to index the primary and secondary tables
+	 */
+	public static final int PRIMARY_BITS = 11;
+	public static final int SECONDARY_BITS = 8;
+	/**
+	 * Maximum number of symbols emitted by one multi-symbol lookup
+	 */
+	public static final int MULTI_SYMBOLS = 4;
+	/**
+	 * Number of streams decoded together by decodeInterleaved
+	 */
+	public static final int STREAMS = 4;
+
+	private static final int LINK = 0x80000000; // flags an entry pointing to a secondary table
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Table entries are either (symbol << 8 | bits used) for a symbol, or
+	// LINK | (offset << 5) | width for a secondary table stored at offset
+	private int[] table;
+	private int tableBits;
+	private int tableSize;
+	private int singleSymbol; // the only symbol when the tree is a single leaf, -1 otherwise
+	private int eof; // PSEUDO_EOF of the alphabet decoded
+	// Multi-symbol entries are (symbols << 16) | (count << 8) | bits used, the
+	// first symbol in the low byte of symbols, count 0 when the single-symbol
+	// table must be used. null when no entry holds two symbols.
+	private long[] multi;
+
+	private boolean finished;
+
+	/**
+	 * Initialize by building the decode tables from the tree supplied by
+	 * the treeMaker parameter.
+	 * @param treeMaker is the source of the tree that will be used to decode
+	 * a compressed file
+	 */
+	@Override
+	public void initialize(TreeMaker treeMaker) {
+		long[] codes = new long[ALPH_SIZE + 1];
+		int[] lengths = new int[ALPH_SIZE + 1];
+		TreeNode root = treeMaker.root;
+		singleSymbol = -1;
+		multi = null;
+		eof = PSEUDO_EOF;
+		if (root.isExternal()){
+			singleSymbol = root.myValue;
+		}
+		else{
+			makeCodes(root, 0, 0, codes, lengths);
+		}
+		buildTables(codes, lengths);
+	}
+
+	/**
+	 * Initialize from a flattened tree, e.g., read from a tree header by
+	 * HuffHeader.readFlatHeader.
+	 * @param tree is the tree of the codes
+	 */
+	public void initialize(HuffFlatTree tree) {
+		long[] codes = new long[ALPH_SIZE + 1];
+		int[] lengths = new int[ALPH_SIZE + 1];
+		multi = null;
+		eof = PSEUDO_EOF;
+		singleSymbol = tree.getSingleSymbol();
+		tree.codes(codes, lengths);
+		buildTables(codes, lengths);
+	}
+
+	/**
+	 * Initialize from the code lengths of a canonical header, no tree is
+	 * needed since the canonical codes follow from the lengths.
+	 * @param lengths is the code length of each chunk including PSEUDO_EOF,
+	 * which is the last entry
+	 */
+	public void initialize(int[] lengths) {
+		singleSymbol = -1;
+		eof = lengths.length - 1;
+		buildTables(HuffEncoder.canonicalCodes(lengths), lengths);
+	}
+
+	/**
+	 * Returns a decoder sharing the tables of this one, with a decoding
+	 * state of its own. Tables are never changed once built, so the copy
+	 * can decode on another thread while this decoder is in use.
+	 * @return the new decoder
+	 */
+	public HuffTableDecoder copy(){
+		HuffTableDecoder copy = new HuffTableDecoder();
+		copy.table = table;
+		copy.tableBits = tableBits;
+		copy.tableSize = tableSize;
+		copy.singleSymbol = singleSymbol;
+		copy.eof = eof;
+		copy.multi = multi;
+		return copy;
+	}
+
+	/**
+	 * Recursive helper function to collect the code and code length of every leaf
+	 */
+	private void makeCodes(TreeNode node, long code, int length, long[] codes, int[] lengths){
+		if (node.isExternal()){
+			codes[node.myValue] = code;
+			lengths[node.myValue] = length;
+			return;
+		}
+		makeCodes(node.myLeft, code << 1, length + 1, codes, lengths);
+		makeCodes(node.myRight, (code << 1) | 1, length + 1, codes, lengths);
+	}
+
+	/**
+	 * Expand the codes into the primary table and as many secondary
+	 * tables as the long codes need.
+	 * @param codes holds the code of each symbol in its rightmost bits
+	 * @param lengths holds the code length of each symbol, 0 if unused
+	 */
+	private void buildTables(long[] codes, int[] lengths){
+		int maxLength = 0;
+		int count = 0;
+		for (int i = 0; i < lengths.length; i++){
+			if (lengths[i] > 0){
+				maxLength = Math.max(maxLength, lengths[i]);
+				count++;
+			}
+		}
+		int[] symbols = new int[count];
+		count = 0;
+		for (int i = 0; i < lengths.length; i++){
+			if (lengths[i] > 0){
+				symbols[count++] = i;
+			}
+		}
+		tableBits = Math.max(1, Math.min(maxLength, PRIMARY_BITS));
+		table = new int[1 << tableBits];
+		tableSize = table.length;
+		fillTable(0, tableBits, 0, symbols, count, codes, lengths);
+		fillMulti();
+		finished = false;
+	}
+
+	/**
+	 * Build the multi-symbol table from the primary table. Starting at each
+	 * index, symbols are decoded as long as the code found lies within the
+	 * bits of the index, since codes are prefix-free the bits after it do
+	 * not matter. Decoding stops before PSEUDO_EOF and long codes.
+	 */
+	private void fillMulti(){
+		if (eof != PSEUDO_EOF){
+			multi = null; // symbols do not fit in a byte
+			return;
+		}
+		multi = new long[1 << tableBits];
+		int mask = (1 << tableBits) - 1;
+		boolean several = false;
+		for (int index = 0; index < multi.length; index++){
+			int used = 0;
+			int count = 0;
+			long symbols = 0;
+			while (count < MULTI_SYMBOLS){
+				int entry = table[(index << used) & mask];
+				int bits = entry & 0xff;
+				if (entry < 0 || bits == 0 || used + bits > tableBits || (entry >>> 8) == eof){
+					break;
+				}
+				symbols |= (long) (entry >>> 8) << (8 * count);
+				used += bits;
+				count++;
+			}
+			multi[index] = (symbols << 16) | (count << 8) | used;
+			several |= count > 1;
+		}
+		if (!several){
+			multi = null; // every lookup would emit one symbol anyway
+		}
+	}
+
+	/**
+	 * Fill one table of 2^width entries for the symbols whose first
+	 * <code>consumed</code> bits lead to this table.
+	 */
+	private void fillTable(int base, int width, int consumed, int[] symbols, int count,
+			long[] codes, int[] lengths){
+		ArrayList<ArrayList<Integer>> groups = new ArrayList<ArrayList<Integer>>();
+		int[] groupIndex = new int[1 << width];
+		for (int i = 0; i < count; i++){
+			int s = symbols[i];
+			int remaining = lengths[s] - consumed;
+			long bits = codes[s] & ((1L << remaining) - 1);
+			if (remaining <= width){
+				int start = (int) (bits << (width - remaining));
+				int end = start + (1 << (width - remaining));
+				for (int j = start; j < end; j++){
+					table[base + j] = (s << 8) | remaining;
+				}
+			}
+			else{
+				int index = (int) (bits >>> (remaining - width));
+				if (groupIndex[index] == 0){
+					groups.add(new ArrayList<Integer>());
+					groupIndex[index] = groups.size();
+				}
+				groups.get(groupIndex[index] - 1).add(s);
+			}
+		}
+		for (int index = 0; index < groupIndex.length; index++){
+			if (groupIndex[index] == 0){
+				continue;
+			}
+			ArrayList<Integer> group = groups.get(groupIndex[index] - 1);
+			int longest = 0;
+			int[] sub = new int[group.size()];
+			for (int i = 0; i < sub.length; i++){
+				sub[i] = group.get(i);
+				longest = Math.max(longest, lengths[sub[i]] - consumed - width);
+			}
+			int subWidth = Math.min(longest, SECONDARY_BITS);
+			int offset = allocate(1 << subWidth);
+			table[base + index] = LINK | (offset << 5) | subWidth;
+			fillTable(offset, subWidth, consumed + width, sub, sub.length, codes, lengths);
+		}
+	}
+
+	/**
+	 * Reserve room for a secondary table at the end of the table array
+	 * @return offset of the new table
+	 */
+	private int allocate(int entries){
+		if (tableSize + entries > table.length){
+			int[] bigger = new int[Math.max(table.length * 2, tableSize + entries)];
+			System.arraycopy(table, 0, bigger, 0, tableSize);
+			table = bigger;
+		}
+		int offset = tableSize;
+		tableSize += entries;
+		return offset;
+	}
+
+	/**
+	 * Decode symbols into dst until len bytes are produced or PSEUDO_EOF is read.
+	 * @param input is source of compressed bits, the header has been read already
+	 * @param dst is where decoded bytes are stored
+	 * @param off is the first index of dst written
+	 * @param len is the maximum number of bytes written
+	 * @return the number of bytes stored in dst
+	 * @throws IOException if bits run out before reaching PSEUDO_EOF
+	 */
+	public int decode(BitInputStream input, byte[] dst, int off, int len) throws IOException {
+		int n = 0;
+		if (singleSymbol != -1){
+			if (singleSymbol != eof){
+				throw new IOException("Coding tree has no PSEUDO_EOF!");
+			}
+			finished = true;
+			return 0;
+		}
+		if (eof != PSEUDO_EOF){
+			throw new IOException("Symbols wider than a byte need decodeWide!");
+		}
+		while (n < len && !finished){
+			if (multi != null){
+				// room for a whole entry is left, so all of its symbols are
+				// stored and only count of them are kept
+				while (len - n >= MULTI_SYMBOLS){
+					long entry = multi[input.peekBits(tableBits)];
+					int count = (int) (entry >>> 8) & 0xff;
+					if (count == 0){
+						break;
+					}
+					input.skipBits((int) entry & 0xff);
+					dst[off + n] = (byte) (entry >>> 16);
+					dst[off + n + 1] = (byte) (entry >>> 24);
+					dst[off + n + 2] = (byte) (entry >>> 32);
+					dst[off + n + 3] = (byte) (entry >>> 40);
+					n += count;
+				}
+				if (n == len){
+					break;
+				}
+			}
+			int symbol = decodeSymbol(input);
+			if (symbol == eof){
+				finished = true;
+			}
+			else{
+				dst[off + n++] = (byte) symbol;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Decode the codes in src[off, off + len) up to PSEUDO_EOF into dst.
+	 * The bits are read with a local buffer instead of a BitInputStream,
+	 * nothing is allocated and no state of this decoder changes, so any
+	 * number of threads can decode with one decoder at once.
+	 * @param src holds the codes, the header has been read already
+	 * @param off is the index of the first byte of codes
+	 * @param len is the number of bytes of codes
+	 * @param dst is where decoded bytes are stored
+	 * @param dstOff is the first index of dst written
+	 * @param dstLen is the most bytes written
+	 * @return the number of bytes decoded
+	 * @throws IOException if the codes end before PSEUDO_EOF or decode to
+	 * more than dstLen bytes
+	 */
+	public int decode(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException {
+		if (singleSymbol != -1){
+			if (singleSymbol != eof){
+				throw new IOException("Coding tree has no PSEUDO_EOF!");
+			}
+			return 0;
+		}
+		if (eof != PSEUDO_EOF){
+			throw new IOException("Symbols wider than a byte need decodeWide!");
+		}
+		int pos = off;
+		int end = off + len;
+		long buffer = 0; // bits not yet decoded, leftmost first
+		int bits = 0;
+		int n = 0;
+		while (true){
+			while (bits <= 56 && pos < end){
+				buffer |= (src[pos++] & 0xffL) << (56 - bits);
+				bits += 8;
+			}
+			if (multi != null && dstLen - n >= MULTI_SYMBOLS){
+				long entry = multi[(int) (buffer >>> (64 - tableBits))];
+				int used = (int) entry & 0xff;
+				if ((entry & 0xff00) != 0 && used <= bits){
+					buffer <<= used;
+					bits -= used;
+					dst[dstOff + n] = (byte) (entry >>> 16);
+					dst[dstOff + n + 1] = (byte) (entry >>> 24);
+					dst[dstOff + n + 2] = (byte) (entry >>> 32);
+					dst[dstOff + n + 3] = (byte) (entry >>> 40);
+					n += (int) (entry >>> 8) & 0xff;
+					continue;
+				}
+			}
+			int width = tableBits;
+			int entry = table[(int) (buffer >>> (64 - width))];
+			while (entry < 0 && width <= bits){
+				// long code, consume this level and continue in the secondary table
+				buffer <<= width;
+				bits -= width;
+				width = entry & 0x1f;
+				entry = table[((entry & ~LINK) >>> 5) + (int) (buffer >>> (64 - width))];
+			}
+			int used = entry & 0xff;
+			if (entry < 0 || used == 0 || used > bits){
+				throw new IOException("Codes end before PSEUDO_EOF!");
+			}
+			buffer <<= used;
+			bits -= used;
+			int symbol = entry >>> 8;
+			if (symbol == eof){
+				return n;
+			}
+			if (n == dstLen){
+				throw new IOException("Decoded data does not fit!");
+			}
+			dst[dstOff + n++] = (byte) symbol;
+		}
+	}
+
+	/**
+	 * Decode the codes in src from index off up to PSEUDO_EOF into dst,
+	 * the same as the array version for heap or direct buffers. The codes
+	 * may start inside a byte, e.g., right after a header. Only absolute
+	 * gets and puts are used, the positions and limits of the buffers do
+	 * not change.
+	 * @param src holds the codes
+	 * @param off is the index of the byte holding the first bit of codes
+	 * @param len is the number of bytes of codes, counted from off
+	 * @param skip is the number of leading bits of src[off] that are not codes, 0 to 7
+	 * @param dst is where decoded bytes are stored
+	 * @param dstOff is the first index of dst written
+	 * @param dstLen is the most bytes written
+	 * @return the number of bytes decoded
+	 * @throws IOException if the codes end before PSEUDO_EOF or decode to
+	 * more than dstLen bytes
+	 */
+	public int decode(ByteBuffer src, int off, int len, int skip, ByteBuffer dst, int dstOff, int dstLen)
+			throws IOException {
+		if (singleSymbol != -1){
+			if (singleSymbol != eof){
+				throw new IOException("Coding tree has no PSEUDO_EOF!");
+			}
+			return 0;
+		}
+		if (eof != PSEUDO_EOF){
+			throw new IOException("Symbols wider than a byte need decodeWide!");
+		}
+		int pos = off;
+		int end = off + len;
+		long buffer = 0; // bits not yet decoded, leftmost first
+		int bits = 0;
+		if (pos < end){
+			buffer = (src.get(pos++) & 0xffL) << (56 + skip);
+			bits = 8 - skip;
+		}
+		int n = 0;
+		while (true){
+			while (bits <= 56 && pos < end){
+				buffer |= (src.get(pos++) & 0xffL) << (56 - bits);
+				bits += 8;
+			}
+			if (multi != null && dstLen - n >= MULTI_SYMBOLS){
+				long entry = multi[(int) (buffer >>> (64 - tableBits))];
+				int used = (int) entry & 0xff;
+				if ((entry & 0xff00) != 0 && used <= bits){
+					buffer <<= used;
+					bits -= used;
+					dst.put(dstOff + n, (byte) (entry >>> 16));
+					dst.put(dstOff + n + 1, (byte) (entry >>> 24));
+					dst.put(dstOff + n + 2, (byte) (entry >>> 32));
+					dst.put(dstOff + n + 3, (byte) (entry >>> 40));
+					n += (int) (entry >>> 8) & 0xff;
+					continue;
+				}
+			}
+			int width = tableBits;
+			int entry = table[(int) (buffer >>> (64 - width))];
+			while (entry < 0 && width <= bits){
+				// long code, consume this level and continue in the secondary table
+				buffer <<= width;
+				bits -= width;
+				width = entry & 0x1f;
+				entry = table[((entry & ~LINK) >>> 5) + (int) (buffer >>> (64 - width))];
+			}
+			int used = entry & 0xff;
+			if (entry < 0 || used == 0 || used > bits){
+				throw new IOException("Codes end before PSEUDO_EOF!");
+			}
+			buffer <<= used;
+			bits -= used;
+			int symbol = entry >>> 8;
+			if (symbol == eof){
+				return n;
+			}
+			if (n == dstLen){
+				throw new IOException("Decoded data does not fit!");
+			}
+			dst.put(dstOff + n++, (byte) symbol);
+		}
+	}
+
+	/**
+	 * Decode 16-bit symbols into dst, high byte first, until fewer than
+	 * two bytes of room are left or PSEUDO_EOF is read.
+	 * @param input is source of compressed bits, the header has been read already
+	 * @param dst is where decoded bytes are stored
+	 * @param off is the first index of dst written
+	 * @param len is the maximum number of bytes written
+	 * @return the number of bytes stored in dst, always even
+	 * @throws IOException if bits run out before reaching PSEUDO_EOF
+	 */
+	public int decodeWide(BitInputStream input, byte[] dst, int off, int len) throws IOException {
+		int n = 0;
+		while (len - n >= 2 && !finished){
+			int symbol = decodeSymbol(input);
+			if (symbol == eof){
+				finished = true;
+			}
+			else{
+				dst[off + n] = (byte) (symbol >>> 8);
+				dst[off + n + 1] = (byte) symbol;
+				n += 2;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Decode one symbol with the single-symbol tables, for callers that
+	 * choose the table for each symbol, e.g., by context.
+	 * @param input is source of compressed bits
+	 * @return the symbol, possibly PSEUDO_EOF
+	 * @throws IOException if bits run out
+	 */
+	public int decodeSymbol(BitInputStream input) throws IOException {
+		int width = tableBits;
+		int entry = table[input.peekBits(width)];
+		while (entry < 0){
+			// long code, consume this level and continue in the secondary table
+			input.skipBits(width);
+			width = entry & 0x1f;
+			entry = table[((entry & ~LINK) >>> 5) + input.peekBits(width)];
+		}
+		int used = entry & 0xff;
+		if (used == 0){
+			throw new IOException("Should not happen! Trouble reading bits!");
+		}
+		input.skipBits(used);
+		return entry >>> 8;
+	}
+
+	/**
+	 * Decode len bytes that were split into STREAMS equal parts, the last
+	 * part also taking the remainder, each coded into its own stream
+	 * without PSEUDO_EOF. One lookup of every stream is done per
+	 * iteration, the streams do not depend on each other so the processor
+	 * can work on their lookups at the same time.
+	 * @param inputs holds the STREAMS streams of codes in order
+	 * @param dst is where decoded bytes are stored
+	 * @param off is the first index of dst written
+	 * @param len is the number of bytes decoded
+	 * @throws IOException if a stream runs out of bits or holds PSEUDO_EOF
+	 */
+	public void decodeInterleaved(BitInputStream[] inputs, byte[] dst, int off, int len) throws IOException {
+		if (inputs.length != STREAMS){
+			throw new IllegalArgumentException("Expected " + STREAMS + " streams!");
+		}
+		if (eof != PSEUDO_EOF){
+			throw new IOException("Interleaved streams need 8-bit symbols!");
+		}
+		if (singleSymbol != -1){
+			if (len != 0){
+				throw new IOException("Coding tree has no symbols!");
+			}
+			return;
+		}
+		BitInputStream in0 = inputs[0];
+		BitInputStream in1 = inputs[1];
+		BitInputStream in2 = inputs[2];
+		BitInputStream in3 = inputs[3];
+		int part = len / STREAMS;
+		int p0 = off;
+		int p1 = off + part;
+		int p2 = off + 2 * part;
+		int p3 = off + 3 * part;
+		int end = off + len;
+		// each step may store MULTI_SYMBOLS bytes, so stop while every
+		// part still has room for them
+		while (p0 <= off + part - MULTI_SYMBOLS && p1 <= off + 2 * part - MULTI_SYMBOLS
+				&& p2 <= off + 3 * part - MULTI_SYMBOLS && p3 <= end - MULTI_SYMBOLS){
+			p0 = step(in0, dst, p0);
+			p1 = step(in1, dst, p1);
+			p2 = step(in2, dst, p2);
+			p3 = step(in3, dst, p3);
+		}
+		finish(in0, dst, p0, off + part);
+		finish(in1, dst, p1, off + 2 * part);
+		finish(in2, dst, p2, off + 3 * part);
+		finish(in3, dst, p3, end);
+	}
+
+	/**
+	 * Decode one lookup of an interleaved stream into dst at p, which has
+	 * room for MULTI_SYMBOLS bytes
+	 * @return the index after the bytes decoded
+	 */
+	private int step(BitInputStream input, byte[] dst, int p) throws IOException {
+		if (multi != null){
+			long entry = multi[input.peekBits(tableBits)];
+			int count = (int) (entry >>> 8) & 0xff;
+			if (count > 0){
+				input.skipBits((int) entry & 0xff);
+				dst[p] = (byte) (entry >>> 16);
+				dst[p + 1] = (byte) (entry >>> 24);
+				dst[p + 2] = (byte) (entry >>> 32);
+				dst[p + 3] = (byte) (entry >>> 40);
+				return p + count;
+			}
+		}
+		int symbol = decodeSymbol(input);
+		if (symbol == PSEUDO_EOF){
+			throw new IOException("Unexpected PSEUDO_EOF in interleaved stream!");
+		}
+		dst[p] = (byte) symbol;
+		return p + 1;
+	}
+
+	/**
+	 * Decode the rest of one part of an interleaved block, [p, end) of dst
+	 */
+	private void finish(BitInputStream input, byte[] dst, int p, int end) throws IOException {
+		for (; p < end; p++){
+			int symbol = decodeSymbol(input);
+			if (symbol == PSEUDO_EOF){
+				throw new IOException("Unexpected PSEUDO_EOF in interleaved stream!");
+			}
+			dst[p] = (byte) symbol;
+		}
+	}
+
+	/**
+	 * Returns true once PSEUDO_EOF has been decoded.
+	 * @return true if the end of the compressed data was reached
+	 */
+	public boolean isFinished(){
+		return finished;
+	}
+
+	/**
+	 * Read the input a table lookup at a time, writing decoded values to
+	 * the output file until PSEUDO_EOF is reached.
+	 * @param input is source of compressed bits, the header has been read already
+	 * @param output is where uncompressed file is written, BITS_PER_WORD at-a-time
+	 * @throws IOException if bits run out before reaching PSEUDO_EOF or other
+	 * I/O error occurs
+	 */
+	@Override
+	public void doDecode(BitInputStream input, BitOutputStream output) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		finished = false;
+		while (!finished){
+			int n = decode(input, buffer, 0, buffer.length);
+			output.write(buffer, 0, n);
+		}
+		input.close();
+		output.close();
+	}
+}
@@ -26,6 +26,14 @@ public class HuffViewer extends JFrame {
     protected JTextField myMessage;
     protected File myFile;
     private boolean myForce;
+    private boolean myCanonical;
+    private boolean myMapped;
+    private boolean myBlocks;
+    private boolean myInterleaved;
+    private boolean myWide;
+    private boolean myContexts;
+    private boolean myStored;
+    private static final int DEFAULT_MAX_CODE_LENGTH = 12;
 
     protected static JFileChooser ourChooser = 
         new JFileChooser(System.getProperties().getProperty("user.dir"));
@@ -85,6 +93,21 @@ public class HuffViewer extends JFrame {
         }
         showMessage("Reading/initializing");
         myFile = ourChooser.getSelectedFile();
+        if (myMapped) {
+            Thread fileReaderThread = new Thread() {
+                public void run(){
+                    try {
+                        myModel.initialize(myFile);
+                        showMessage("Initialization done!");
+                    } catch (IOException e) {
+                        showError(e.toString());
+                        showMessage("Initialization failed.");
+                    }
+                }
+            };
+            fileReaderThread.start();
+            return;
+        }
         final ProgressMonitorInputStream pmis = getMonitorableStream(myFile,
                 "Counting/reading bits ...");
         final ProgressMonitor progress = pmis.getProgressMonitor();
@@ -129,6 +152,94 @@ public class HuffViewer extends JFrame {
             }
         });
         menu.add(force);
+
+        JCheckBoxMenuItem canonical = new JCheckBoxMenuItem(new AbstractAction(
+                "Canonical Codes") {
+            public void actionPerformed(ActionEvent ev) {
+                myCanonical = !myCanonical;
+                myModel.setCanonical(myCanonical);
+            }
+        });
+        menu.add(canonical);
+
+        JCheckBoxMenuItem mapped = new JCheckBoxMenuItem(new AbstractAction(
+                "Memory-Mapped I/O") {
+            public void actionPerformed(ActionEvent ev) {
+                myMapped = !myMapped;
+            }
+        });
+        menu.add(mapped);
+
+        JCheckBoxMenuItem blocks = new JCheckBoxMenuItem(new AbstractAction(
+                "Parallel Blocks") {
+            public void actionPerformed(ActionEvent ev) {
+                myBlocks = !myBlocks;
+                myModel.setBlocks(myBlocks ? HuffBlockCompressor.DEFAULT_BLOCK_SIZE : 0,
+                        Runtime.getRuntime().availableProcessors());
+            }
+        });
+        menu.add(blocks);
+
+        JCheckBoxMenuItem interleaved = new JCheckBoxMenuItem(new AbstractAction(
+                "Interleaved Streams") {
+            public void actionPerformed(ActionEvent ev) {
+                myInterleaved = !myInterleaved;
+                myModel.setInterleaved(myInterleaved);
+            }
+        });
+        menu.add(interleaved);
+
+        JCheckBoxMenuItem wide = new JCheckBoxMenuItem(new AbstractAction(
+                "16-bit Symbols") {
+            public void actionPerformed(ActionEvent ev) {
+                myWide = !myWide;
+                myModel.setSymbolBits(myWide ? 16 : IHuffConstants.BITS_PER_WORD);
+            }
+        });
+        menu.add(wide);
+
+        JCheckBoxMenuItem contexts = new JCheckBoxMenuItem(new AbstractAction(
+                "Order-1 Contexts") {
+            public void actionPerformed(ActionEvent ev) {
+                myContexts = !myContexts;
+                myModel.setContexts(myContexts);
+            }
+        });
+        menu.add(contexts);
+
+        JCheckBoxMenuItem stored = new JCheckBoxMenuItem(new AbstractAction(
+                "Store Incompressible Files") {
+            public void actionPerformed(ActionEvent ev) {
+                myStored = !myStored;
+                myModel.setStored(myStored);
+            }
+        });
+        menu.add(stored);
+
+        final JCheckBoxMenuItem limit = new JCheckBoxMenuItem();
+        limit.setAction(new AbstractAction("Limit Code Length") {
+            public void actionPerformed(ActionEvent ev) {
+                int maxLength = 0;
+                if (limit.isSelected()) {
+                    String answer = JOptionPane.showInputDialog(HuffViewer.this,
+                            "Longest code in bits", DEFAULT_MAX_CODE_LENGTH);
+                    try {
+                        maxLength = answer == null ? 0 : Integer.parseInt(answer.trim());
+                    } catch (NumberFormatException e) {
+                        showError("Not a number: " + answer);
+                    }
+                }
+                try {
+                    myModel.setMaxCodeLength(maxLength);
+                } catch (IllegalArgumentException e) {
+                    showError(e.getMessage());
+                    maxLength = 0;
+                    myModel.setMaxCodeLength(0);
+                }
+                limit.setSelected(maxLength > 0);
+            }
+        });
+        menu.add(limit);
         return menu;
 
     }
@@ -190,7 +301,23 @@ public class HuffViewer extends JFrame {
             int pos = path.lastIndexOf(name);
             newName = path.substring(0, pos) + newName;
             final File newFile = new File(newName);
-
+            final File compressed = file;
+
+            if (myMapped) {
+                Thread fileReaderThread = new Thread() {
+                    public void run() {
+                        try {
+                            myModel.uncompress(compressed, newFile);
+                            showMessage("Uncompression done!");
+                        } catch (IOException e) {
+                            showMessage("Error detected. Uncompression cancelled.");
+                            showError(e.toString());
+                        }
+                    }
+                };
+                fileReaderThread.start();
+                return;
+            }
             final ProgressMonitorInputStream stream = getMonitorableStream(
                     file, "Uncompressing bits...");
             final ProgressMonitor progress = stream.getProgressMonitor();
@@ -245,6 +372,21 @@ public class HuffViewer extends JFrame {
         newName = path.substring(0, pos) + newName;
         final File file = new File(newName);
 
+        if (myMapped || myBlocks) {
+            Thread fileWriterThread = new Thread() {
+                public void run() {
+                    try {
+                        myModel.write(myFile, file, myForce);
+                        showMessage("Compression done!");
+                    } catch (IOException e) {
+                        showMessage("Error detected. Compression cancelled.");
+                        showError(e.toString());
+                    }
+                }
+            };
+            fileWriterThread.start();
+            return;
+        }
         final ProgressMonitorInputStream pmis = getMonitorableStream(myFile,
                 "Compressing bits ...");
         final ProgressMonitor progress = pmis.getProgressMonitor();
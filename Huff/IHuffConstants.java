@@ -37,4 +37,65 @@ public interface IHuffConstants {
      * Isolate the magic number in one place.
      */
     public static final int MAGIC_NUMBER = 1234567873;
+
+    /**
+     * Magic number of files whose header stores canonical code lengths
+     * instead of the tree.
+     */
+    public static final int CANONICAL_MAGIC_NUMBER = 1234567874;
+
+    /**
+     * Magic number of files made of independently compressed blocks.
+     */
+    public static final int BLOCK_MAGIC_NUMBER = 1234567875;
+
+    /**
+     * Magic number ending the block index at the end of a block file.
+     */
+    public static final int BLOCK_INDEX_MAGIC_NUMBER = 1234567876;
+
+    /**
+     * Magic number of block payloads whose codes are split across
+     * interleaved streams.
+     */
+    public static final int INTERLEAVED_MAGIC_NUMBER = 1234567877;
+
+    /**
+     * Magic number of canonical headers for symbols of a width other than
+     * BITS_PER_WORD, the width follows in WIDTH_BITS bits.
+     */
+    public static final int WIDE_MAGIC_NUMBER = 1234567878;
+
+    /**
+     * Magic number of block payloads coded with a table per cluster of
+     * previous bytes.
+     */
+    public static final int CONTEXT_MAGIC_NUMBER = 1234567879;
+
+    /**
+     * Magic number of files and block payloads holding their data
+     * uncompressed, used when coding would not save space.
+     */
+    public static final int STORED_MAGIC_NUMBER = 1234567880;
+
+    /**
+     * Magic number of saved dictionaries and of messages coded with one,
+     * the dictionary ID follows.
+     */
+    public static final int DICTIONARY_MAGIC_NUMBER = 1234567881;
+
+    /**
+     * Number of bits storing the symbol width in a wide header.
+     */
+    public static final int WIDTH_BITS = 5;
+
+    /**
+     * The widest symbols supported, in bits.
+     */
+    public static final int MAX_SYMBOL_BITS = 16;
+
+    /**
+     * The longest code length a canonical header may store.
+     */
+    public static final int MAX_CODE_LENGTH = 58;
 }
@@ -38,6 +38,14 @@ public interface IHuffHeader extends IHuffConstants {
      */
     public void writeHeader(TreeNode root, BitOutputStream out);
     public void writeHelper(TreeNode node, BitOutputStream out);
+
+    /**
+     * Write a canonical header, including a magic number and the code
+     * lengths from which the canonical codes can be reassigned.
+     * @param lengths is the code length of each chunk, 0 if unused
+     * @param out is where the header is written
+     */
+    public void writeHeader(int[] lengths, BitOutputStream out);
     /**
      * Read the header and return an ITreeMaker object corresponding to
      * the information/header read.
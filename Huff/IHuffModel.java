@@ -14,6 +14,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public interface IHuffModel extends IHuffConstants {
     /**
@@ -34,6 +35,14 @@ public interface IHuffModel extends IHuffConstants {
      */
     public void initialize(InputStream stream) throws IOException;
     
+    /**
+     * Initialize state from a file, reading it through a memory mapping
+     * instead of a stream.
+     * @param file is the file for initializing state of this model
+     * @throws IOException if the reading fails
+     */
+    public void initialize(File file) throws IOException;
+    
     /**
      * Write a compressed version of the data read
      * by the InputStream parameter, -- if the stream is
@@ -48,6 +57,108 @@ public interface IHuffModel extends IHuffConstants {
      */
     public void write(InputStream stream, File file, boolean force) throws IOException;
     
+    /**
+     * Write a compressed version of a file, reading it through a memory
+     * mapping instead of a stream. Otherwise the same as the stream version.
+     * @param input is the file to be compressed
+     * @param file specifes the file to be written with compressed data
+     * @param force indicates if compression forced
+     * @throws IOException if the I/O fails or force compression is required
+     */
+    public void write(File input, File file, boolean force) throws IOException;
+    
+    /**
+     * Choose whether compressed files store canonical code lengths
+     * instead of the coding tree in their header.
+     * @param canonical true for canonical code length headers
+     */
+    public void setCanonical(boolean canonical);
+    
+    /**
+     * Choose whether files compressed from a File are made of independent
+     * blocks compressed on several threads.
+     * @param blockSize is the number of input bytes per block, 0 for a single block
+     * @param threads is the number of blocks compressed at the same time
+     */
+    public void setBlocks(int blockSize, int threads);
+    
+    /**
+     * Limit the length of the codes of files written from now on, longer
+     * codes are shortened at some cost in compression.
+     * @param maxLength is the longest code allowed, 0 for no limit
+     */
+    public void setMaxCodeLength(int maxLength);
+    
+    /**
+     * Choose whether block files are written with the codes of each block
+     * split across interleaved streams, which decode faster.
+     * @param interleaved true to write interleaved blocks
+     */
+    public void setInterleaved(boolean interleaved);
+    
+    /**
+     * Choose whether block files are written with each byte coded by a
+     * table chosen by the byte before it, which suits text and logs.
+     * @param contexts true to write order-1 context blocks
+     */
+    public void setContexts(boolean contexts);
+    
+    /**
+     * Choose whether data that would not shrink is stored as it is
+     * instead of failing, unless compression is forced.
+     * @param stored true to store data that does not compress
+     */
+    public void setStored(boolean stored);
+    
+    /**
+     * Choose the width of the symbols coded in block files, 16-bit symbols
+     * suit data made of 16-bit units such as UTF-16 text.
+     * @param symbolBits is the number of bits per symbol, 8 or 16
+     */
+    public void setSymbolBits(int symbolBits);
+    
+    /**
+     * Compress a stream that can only be read once, e.g., a pipe, in a
+     * single pass and with bounded memory.
+     * @param in is the data to be compressed
+     * @param out is where the compressed data is written
+     * @return the number of bytes written
+     * @throws IOException if the I/O fails
+     */
+    public long compress(InputStream in, OutputStream out) throws IOException;
+    
+    /**
+     * Compress the bytes between the position and the limit of src into
+     * dst at its position, in memory. The input is read in place, never
+     * copied, and may be a heap or a direct buffer.
+     * @param src is the data to be compressed, its position moves to its limit
+     * @param dst is where the compressed data is written, its position moves
+     * past it
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if dst has fewer than
+     * maxCompressedSize bytes remaining and the data does not fit
+     */
+    public int compress(ByteBuffer src, ByteBuffer dst);
+    
+    /**
+     * Returns the most bytes compress can write for len bytes of data.
+     * @param len is the length of the data
+     * @return the bound
+     */
+    public long maxCompressedSize(int len);
+    
+    /**
+     * Uncompress data compressed in memory or a compressed file held in
+     * memory, between the position and the limit of src, into dst at its
+     * position. Either buffer may be heap or direct.
+     * @param src is the compressed data, its position moves to its limit
+     * @param dst is where the uncompressed data is written, its position
+     * moves past it
+     * @return the number of bytes written
+     * @throws IOException if the data is bad or does not fit in dst
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException;
+    
     /**
      * Make sure this model communicates with some view.
      * @param viewer is the view for communicating.
@@ -62,4 +173,13 @@ public interface IHuffModel extends IHuffConstants {
      */
     public void uncompress(InputStream in, OutputStream out) throws IOException;
     
+    /**
+     * Uncompress a previously compressed file, reading it through a memory
+     * mapping instead of a stream.
+     * @param in is the compressed file to be uncompressed
+     * @param out is the file where the uncompressed bits will be written
+     * @throws IOException if bad header is read or PSEUDO_EOF missing
+     */
+    public void uncompress(File in, File out) throws IOException;
+    
 }
@@ -4,6 +4,7 @@
  * The class stores a forest of treenodes in a priority queue
  * When makeRoot() is called, the tree is constructed using the priority queue by 
  * removing two minimum node and creating a parent until the root node is returned
+ * Building a tree of n leaves takes O(n log n) time
  * @author Zifan Yang
  *
  */
@@ -16,20 +17,20 @@ public class TreeMaker implements ITreeMaker {
 	public int size(){
 		return treeNodes.size();
 	}
+	/**
+	 * Merge the two lightest trees until one is left, iteratively so the
+	 * depth of the call stack does not grow with the alphabet.
+	 * @return root of the Huffman tree, null if no nodes were added
+	 */
 	@Override
 	public TreeNode makeRoot() {
-		TreeNode root; 
-    	if(treeNodes.size() == 1){
-    		return treeNodes.removeMin(); 
-    	}
-    	
-    	TreeNode left = treeNodes.removeMin(); 
-    	TreeNode right = treeNodes.removeMin(); 
-    	treeNodes.insert(new TreeNode(-1, 
+    	while(treeNodes.size() > 1){
+    		TreeNode left = treeNodes.removeMin(); 
+    		TreeNode right = treeNodes.removeMin(); 
+    		treeNodes.insert(new TreeNode(-1, 
     				left.myWeight + right.myWeight, left, right)); 
-    	root = makeRoot(); 
-    	
-    	return root; 
+    	}
+    	return treeNodes.removeMin(); 
 	}
 	public void addNode(int value, int weight){
 		TreeNode newNode = new TreeNode(value, weight);
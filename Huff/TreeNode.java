@@ -9,7 +9,7 @@
 public class TreeNode implements Comparable<TreeNode> {
     
     public int myValue;
-    public int myWeight;
+    public long myWeight; // a long so the sum of counts of a file over 2 GB fits
     public TreeNode myLeft;
     public TreeNode myRight;
 
@@ -22,7 +22,7 @@ public class TreeNode implements Comparable<TreeNode> {
      *            is used for comparison (e.g., count of # occurrences)
      */
 
-    public TreeNode(int value, int weight) {
+    public TreeNode(int value, long weight) {
         myValue = value;
         myWeight = weight;
     }
@@ -40,7 +40,7 @@ public class TreeNode implements Comparable<TreeNode> {
      *            is right subtree
      */
 
-    public TreeNode(int value, int weight, TreeNode ltree, TreeNode rtree) {
+    public TreeNode(int value, long weight, TreeNode ltree, TreeNode rtree) {
         this(value, weight);
         myLeft = ltree;
         myRight = rtree;
@@ -53,7 +53,7 @@ public class TreeNode implements Comparable<TreeNode> {
 
     public int compareTo(TreeNode rhs) {
 
-        return myWeight - rhs.myWeight;
+        return Long.compare(myWeight, rhs.myWeight);
     }
     public boolean isExternal(){
     	return (myLeft == null && myRight == null);
@@ -1,4 +1,4 @@
-import java.util.Comparator;
+import java.util.Arrays;
 
 /*
  * Copyright 2014, Michael T. Goodrich, Roberto Tamassia, Michael H. Goldwasser
@@ -25,6 +25,10 @@ import java.util.Comparator;
 
 /**
  * Class for the priority queue ADT for creating the huffman tree
+ * The nodes are kept in an array-based binary heap so insert and removeMin
+ * take O(log n) time. Nodes of equal weight are removed most recently
+ * inserted first, which is the order the original list-based queue used,
+ * so the trees built (and the files compressed) do not change.
  * @author Michael T. Goodrich
  * @author Roberto Tamassia
  * @author Michael H. Goldwasser
@@ -32,13 +36,16 @@ import java.util.Comparator;
  */
 public class TreeNodePriorityQueue{
 	
-  private PositionalList<TreeNode> list = new LinkedPositionalList<>();
+  private TreeNode[] heap = new TreeNode[16];
+  private int[] order = new int[16]; // insertion number of each node, breaks ties
+  private int size = 0;
+  private int inserted = 0;
  
   /**
    * Returns the number of items in the priority queue.
    * @return number of items
    */
-  int size(){return list.size();}
+  int size(){return size;}
   
   /**
    * Inserts a TreeNode and returns the node created.
@@ -47,7 +54,14 @@ public class TreeNodePriorityQueue{
    * @throws IllegalArgumentException if the key is unacceptable for this queue
    */
   TreeNode insert(TreeNode node) throws IllegalArgumentException {
-	list.addLast(node);
+	if (node == null) throw new IllegalArgumentException("null node");
+	if (size == heap.length){
+		heap = Arrays.copyOf(heap, size * 2);
+		order = Arrays.copyOf(order, size * 2);
+	}
+	heap[size] = node;
+	order[size] = inserted++;
+	upheap(size++);
 	return node;
 }
 
@@ -56,30 +70,65 @@ public class TreeNodePriorityQueue{
    * @return entry having a minimal key (or null if empty)
    */
   TreeNode min(){
-	if (list.isEmpty()) return null;
-	return findMin().getElement();
+	if (isEmpty()) return null;
+	return heap[0];
 	  
   }
-  /**
-   * Returns the position of an node with minimal key 
-   */
-  private Position<TreeNode> findMin() {
-	Position<TreeNode> temp = list.first();
-	for (Position<TreeNode> walk : list.positions()){
-		if(walk.getElement().compareTo(temp.getElement()) <= 0){
-			temp = walk;
-		}
-	}
-	return temp;
-}
 
 /**
    * Removes and returns an node with minimal key.
    * @return the removed node (or null if empty)
    */
   TreeNode removeMin(){
-	  if (list.isEmpty()) return null;
-	  return list.remove(findMin());
+	  if (isEmpty()) return null;
+	  TreeNode min = heap[0];
+	  size--;
+	  swap(0, size);
+	  heap[size] = null;
+	  downheap(0);
+	  return min;
+  }
+
+  /**
+   * Returns true if the node at index i must come out before the node at j
+   */
+  private boolean before(int i, int j){
+	int c = Long.compare(heap[i].myWeight, heap[j].myWeight);
+	return c < 0 || (c == 0 && order[i] > order[j]);
+  }
+
+  private void swap(int i, int j){
+	TreeNode node = heap[i];
+	heap[i] = heap[j];
+	heap[j] = node;
+	int k = order[i];
+	order[i] = order[j];
+	order[j] = k;
+  }
+
+  /**
+   * Moves the node at index i up until its parent comes before it
+   */
+  private void upheap(int i){
+	while (i > 0){
+		int parent = (i - 1) / 2;
+		if (!before(i, parent)) break;
+		swap(i, parent);
+		i = parent;
+	}
+  }
+
+  /**
+   * Moves the node at index i down until both children come after it
+   */
+  private void downheap(int i){
+	while (2 * i + 1 < size){
+		int child = 2 * i + 1;
+		if (child + 1 < size && before(child + 1, child)) child++;
+		if (!before(child, i)) break;
+		swap(i, child);
+		i = child;
+	}
   }
 
 
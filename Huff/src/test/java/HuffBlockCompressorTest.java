@@ -0,0 +1,143 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+/**
+ * Round trips through block files for every payload kind, plain,
+ * interleaved, context, 16-bit and stored, written from a mapped file or
+ * in one pass from a stream and read back in parallel or as a stream, and
+ * checks that corrupt files are rejected with an IOException before
+ * anything is allocated for them.
+ * @author Zifan Yang
+ *
+ */
+class HuffBlockCompressorTest {
+	private static final int BLOCK_SIZE = 1 << 15;
+
+	@TempDir
+	File dir;
+
+	static Stream<Arguments> payloads(){
+		Stream.Builder<Arguments> payloads = Stream.builder();
+		for (String payload : new String[] { "plain", "limited", "interleaved", "context", "wide", "wide limited" }){
+			for (Object[] input : HuffTestData.all()){
+				payloads.add(Arguments.of(payload, input[0], input[1]));
+			}
+		}
+		return payloads.build();
+	}
+
+	private static Consumer<HuffBlockCompressor> settings(String payload){
+		switch (payload){
+		case "limited": return compressor -> compressor.setMaxCodeLength(11);
+		case "interleaved": return compressor -> compressor.setInterleaved(true);
+		case "context": return compressor -> compressor.setContexts(true);
+		case "wide": return compressor -> compressor.setSymbolBits(16);
+		case "wide limited": return compressor -> { compressor.setSymbolBits(16); compressor.setMaxCodeLength(12); };
+		default: return compressor -> { };
+		}
+	}
+
+	@ParameterizedTest(name = "{0} {1}")
+	@MethodSource("payloads")
+	void roundTripsFromFile(String payload, String name, byte[] data) throws IOException{
+		File input = new File(dir, "in");
+		Files.write(input.toPath(), data);
+		File compressed = new File(dir, "in.hf");
+		HuffBlockCompressor compressor = new HuffBlockCompressor(BLOCK_SIZE, 2);
+		settings(payload).accept(compressor);
+		assertEquals(compressor.compress(input, compressed), compressed.length());
+		assertUncompresses(data, Files.readAllBytes(compressed.toPath()));
+	}
+
+	@ParameterizedTest(name = "{0} {1}")
+	@MethodSource("payloads")
+	void roundTripsFromStream(String payload, String name, byte[] data) throws IOException{
+		HuffBlockCompressor compressor = new HuffBlockCompressor(BLOCK_SIZE, 1);
+		settings(payload).accept(compressor);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		assertEquals(compressor.compress(new ByteArrayInputStream(data), compressed), compressed.size());
+		assertUncompresses(data, compressed.toByteArray());
+	}
+
+	@Test
+	void storesBlocksThatDoNotShrink() throws IOException{
+		byte[] data = HuffTestData.random(3 * BLOCK_SIZE);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new HuffBlockCompressor(BLOCK_SIZE, 1).compress(new ByteArrayInputStream(data), compressed);
+		assertEquals(ByteBuffer.wrap(compressed.toByteArray(), 16, 4).getInt(), IHuffConstants.STORED_MAGIC_NUMBER);
+		assertUncompresses(data, compressed.toByteArray());
+	}
+
+	@Test
+	void rejectsFrameLargerThanStoredBlock() throws IOException{
+		byte[] file = compress(HuffTestData.text());
+		ByteBuffer.wrap(file).putInt(8, Integer.MAX_VALUE); // compressed length of the first frame
+		assertRejected(file);
+	}
+
+	@Test
+	void rejectsBlockSizeAboveLimit() throws IOException{
+		byte[] file = compress(HuffTestData.text());
+		ByteBuffer.wrap(file).putInt(4, Integer.MAX_VALUE).putInt(12, Integer.MAX_VALUE - 8);
+		assertRejected(file);
+	}
+
+	@Test
+	void rejectsCorruptFrameHeaders() throws IOException{
+		byte[] good = compress(HuffTestData.text());
+		Random random = new Random(11);
+		for (int i = 0; i < 200; i++){
+			byte[] bad = good.clone();
+			bad[random.nextInt(24)] = (byte) random.nextInt(256);
+			try{
+				HuffBlockCompressor.decompress(new ByteArrayInputStream(bad), new ByteArrayOutputStream());
+			}
+			catch (IOException e){
+				// expected for most, others changed only bits of the codes
+			}
+		}
+	}
+
+	private static byte[] compress(byte[] data) throws IOException{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new HuffBlockCompressor(BLOCK_SIZE, 1).compress(new ByteArrayInputStream(data), compressed);
+		return compressed.toByteArray();
+	}
+
+	private void assertRejected(byte[] file) throws IOException{
+		assertThrows(IOException.class,
+				() -> HuffBlockCompressor.decompress(new ByteArrayInputStream(file), new ByteArrayOutputStream()));
+		File compressed = new File(dir, "bad.hf");
+		Files.write(compressed.toPath(), file);
+		assertThrows(IOException.class,
+				() -> new HuffBlockCompressor(BLOCK_SIZE, 1).decompress(compressed, new File(dir, "bad.unhf")));
+	}
+
+	private void assertUncompresses(byte[] data, byte[] compressed) throws IOException{
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		HuffBlockCompressor.decompress(new ByteArrayInputStream(compressed), stream);
+		assertArrayEquals(data, stream.toByteArray(), "stream");
+
+		File file = new File(dir, "blocks.hf");
+		Files.write(file.toPath(), compressed);
+		File uncompressed = new File(dir, "blocks.unhf");
+		new HuffModel().uncompress(file, uncompressed);
+		assertArrayEquals(data, Files.readAllBytes(uncompressed.toPath()), "parallel");
+	}
+}
@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+/**
+ * Round trips through HuffCodec on arrays and buffers, and code lengths
+ * that do not make a usable code are refused.
+ * @author Zifan Yang
+ *
+ */
+class HuffCodecTest implements IHuffConstants {
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("HuffTestData#all")
+	void roundTripsArrays(String name, byte[] data) throws IOException{
+		HuffCodec codec = HuffCodec.fromCounts(counts(data), 0);
+		byte[] encoded = new byte[(int) codec.maxEncodedSize(data.length)];
+		int n = codec.encode(data, 0, data.length, encoded, 0);
+		assertEquals((codec.encodedBits(data, 0, data.length) + BITS_PER_WORD - 1) / BITS_PER_WORD, n);
+		byte[] decoded = new byte[data.length];
+		assertEquals(data.length, codec.decode(encoded, 0, n, decoded, 0, decoded.length));
+		assertArrayEquals(data, decoded);
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("HuffTestData#all")
+	void roundTripsBuffers(String name, byte[] data) throws IOException{
+		HuffCodec codec = HuffCodec.fromCounts(counts(data), 12);
+		ByteBuffer encoded = ByteBuffer.allocateDirect((int) codec.maxEncodedSize(data.length));
+		codec.encode(ByteBuffer.wrap(data), encoded, false);
+		encoded.flip();
+		ByteBuffer decoded = ByteBuffer.allocate(data.length);
+		codec.decode(encoded, decoded);
+		assertArrayEquals(data, decoded.array());
+	}
+
+	@Test
+	void refusesBytesWithoutCodes(){
+		HuffCodec codec = HuffCodec.fromCounts(counts(new byte[] { 'a' }), 0);
+		assertThrows(IllegalArgumentException.class, () -> codec.encode(new byte[] { 'b' }, 0, 1, new byte[16], 0));
+	}
+
+	@Test
+	void refusesBadCodeLengths(){
+		int[] overSubscribed = new int[ALPH_SIZE + 1];
+		Arrays.fill(overSubscribed, 1);
+		assertThrows(IllegalArgumentException.class, () -> new HuffCodec(overSubscribed));
+
+		int[] noEof = new int[ALPH_SIZE + 1];
+		noEof[0] = 1;
+		noEof[1] = 1;
+		assertThrows(IllegalArgumentException.class, () -> new HuffCodec(noEof));
+
+		int[] tooLong = new int[ALPH_SIZE + 1];
+		for (int i = 0; i < HuffCodec.MAX_LENGTH; i++){
+			tooLong[i] = i + 1;
+		}
+		tooLong[PSEUDO_EOF] = HuffCodec.MAX_LENGTH + 1;
+		tooLong[HuffCodec.MAX_LENGTH] = HuffCodec.MAX_LENGTH + 1;
+		assertThrows(IllegalArgumentException.class, () -> new HuffCodec(tooLong));
+
+		assertThrows(IllegalArgumentException.class, () -> new HuffCodec(new int[ALPH_SIZE]));
+	}
+
+	private static int[] counts(byte[] data){
+		return CharCounter.count(ByteBuffer.wrap(data));
+	}
+}
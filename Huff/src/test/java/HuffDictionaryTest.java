@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+/**
+ * Messages round trip through a saved and loaded dictionary, and messages
+ * for another dictionary or with a bad length are rejected.
+ * @author Zifan Yang
+ *
+ */
+class HuffDictionaryTest {
+	@TempDir
+	File dir;
+
+	private HuffDictionary dictionary;
+
+	@BeforeEach
+	void train() throws IOException{
+		Path sample = new File(dir, "sample").toPath();
+		Files.write(sample, HuffTestData.text());
+		HuffDictionary.train(7, List.of(sample)).save(dir);
+		dictionary = HuffDictionary.load(dir, 7);
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("HuffTestData#all")
+	void roundTrips(String name, byte[] data) throws IOException{
+		byte[] message = dictionary.compress(data, 0, data.length);
+		assertEquals(7, HuffDictionary.dictionaryId(message));
+		assertEquals(data.length, HuffDictionary.decompressedLength(message));
+		assertArrayEquals(data, dictionary.decompress(message));
+	}
+
+	@Test
+	void decompressesIntoPooledArrays() throws IOException{
+		HuffBufferPool pool = new HuffBufferPool(256, 2);
+		byte[] data = "{\"id\": 42, \"took\": 17}".getBytes();
+		byte[] message = dictionary.compress(data, 0, data.length);
+		byte[] buffer = pool.acquire(HuffDictionary.decompressedLength(message));
+		int n = dictionary.decompress(message, buffer, 0);
+		assertArrayEquals(data, Arrays.copyOf(buffer, n));
+		pool.release(buffer);
+	}
+
+	@Test
+	void rejectsBadMessages() throws IOException{
+		byte[] data = HuffTestData.oneByte();
+		byte[] message = dictionary.compress(data, 0, data.length);
+		byte[] otherId = message.clone();
+		otherId[5]++;
+		assertThrows(IOException.class, () -> dictionary.decompress(otherId));
+		byte[] longer = message.clone();
+		longer[6] = (byte) 0xff; // a length the codes cannot hold
+		assertThrows(IOException.class, () -> dictionary.decompress(longer));
+		assertThrows(IOException.class, () -> dictionary.decompress(new byte[] { 1, 2, 3 }));
+	}
+}
@@ -0,0 +1,111 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+/**
+ * Canonical and wide headers read back as written, and headers whose code
+ * lengths run past the alphabet, do not make a complete code or are cut
+ * short are rejected with an IOException.
+ * @author Zifan Yang
+ *
+ */
+class HuffHeaderTest implements IHuffConstants {
+	@Test
+	void readsCanonicalHeader() throws IOException{
+		int[] lengths = new int[ALPH_SIZE + 1];
+		lengths['a'] = 1;
+		lengths['b'] = 2;
+		lengths[PSEUDO_EOF] = 2;
+		HuffHeader header = read(write(lengths));
+		assertTrue(header.isCanonical());
+		assertArrayEquals(lengths, header.getCodeLengths());
+	}
+
+	@Test
+	void readsWideHeader() throws IOException{
+		int[] lengths = new int[(1 << 16) + 1];
+		Arrays.fill(lengths, 0, 4, 3);
+		lengths[40000] = 2;
+		lengths[1 << 16] = 2;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitOutputStream out = new BitOutputStream(bytes);
+		HuffHeader writer = new HuffHeader();
+		writer.writeHeader(lengths, out);
+		out.close();
+		HuffHeader header = read(bytes.toByteArray());
+		assertArrayEquals(lengths, header.getCodeLengths());
+		assertEquals(writer.headerSize(), header.headerSize());
+		assertTrue(header.headerSize() < 2 * BITS_PER_INT + WIDTH_BITS + 64, "runs of unused symbols are short");
+	}
+
+	@Test
+	void rejectsRunPastLastSymbol() throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitOutputStream out = new BitOutputStream(bytes);
+		out.write(BITS_PER_INT, CANONICAL_MAGIC_NUMBER);
+		out.write(1, 0); // a run of unused chunks
+		out.write(8, 0); // Elias-gamma coded 300
+		out.write(9, 300);
+		out.close();
+		assertThrows(IOException.class, () -> read(bytes.toByteArray()));
+	}
+
+	@Test
+	void rejectsOverSubscribedLengths(){
+		int[] lengths = new int[ALPH_SIZE + 1];
+		Arrays.fill(lengths, BITS_PER_WORD); // 257 codes of 8 bits
+		assertFalse(HuffHeader.isCompleteCode(lengths));
+		assertThrows(IOException.class, () -> read(write(lengths)));
+	}
+
+	@Test
+	void rejectsMissingPseudoEof(){
+		int[] lengths = new int[ALPH_SIZE + 1];
+		lengths['a'] = 1;
+		lengths['b'] = 1;
+		assertThrows(IOException.class, () -> read(write(lengths)));
+	}
+
+	@Test
+	void rejectsTruncatedHeaders() throws IOException{
+		int[] lengths = new int[ALPH_SIZE + 1];
+		Arrays.fill(lengths, 9);
+		lengths[PSEUDO_EOF] = 1;
+		byte[] canonical = write(lengths);
+		assertThrows(IOException.class, () -> read(Arrays.copyOf(canonical, canonical.length / 2)));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitOutputStream out = new BitOutputStream(bytes);
+		new HuffHeader().writeHeader(new TreeNode(0, 0, new TreeNode('a', 1), new TreeNode(PSEUDO_EOF, 1)), out);
+		out.close();
+		byte[] tree = bytes.toByteArray();
+		assertThrows(IOException.class, () -> read(Arrays.copyOf(tree, 5)));
+	}
+
+	@Test
+	void rejectsBadMagicNumber(){
+		assertThrows(IOException.class, () -> read(new byte[] { 1, 2, 3, 4, 5, 6 }));
+	}
+
+	private static byte[] write(int[] lengths){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitOutputStream out = new BitOutputStream(bytes);
+		new HuffHeader().writeHeader(lengths, out);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static HuffHeader read(byte[] bytes) throws IOException{
+		HuffHeader header = new HuffHeader();
+		header.readHeader(new BitInputStream(ByteBuffer.wrap(bytes)));
+		return header;
+	}
+}
@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+/**
+ * Round trips through HuffModel for every single-stream format, tree and
+ * canonical headers with and without a length limit and stored files,
+ * compressed from a stream or a mapped file and uncompressed from a
+ * stream, a mapped file and memory, and through the ByteBuffer API.
+ * @author Zifan Yang
+ *
+ */
+class HuffModelTest {
+	@TempDir
+	File dir;
+
+	static Stream<Arguments> formats(){
+		Stream.Builder<Arguments> formats = Stream.builder();
+		for (Object[] input : HuffTestData.all()){
+			formats.add(Arguments.of("tree", input[0], input[1]));
+			formats.add(Arguments.of("canonical", input[0], input[1]));
+			formats.add(Arguments.of("limited", input[0], input[1]));
+			formats.add(Arguments.of("stored", input[0], input[1]));
+		}
+		return formats.build();
+	}
+
+	private static Consumer<HuffModel> settings(String format){
+		switch (format){
+		case "canonical": return model -> model.setCanonical(true);
+		case "limited": return model -> { model.setCanonical(true); model.setMaxCodeLength(11); };
+		case "stored": return model -> model.setStored(true);
+		default: return model -> { };
+		}
+	}
+
+	@ParameterizedTest(name = "{0} {1}")
+	@MethodSource("formats")
+	void roundTripsFromMappedFile(String format, String name, byte[] data) throws IOException{
+		File input = write("in", data);
+		File compressed = new File(dir, "in.hf");
+		HuffModel model = new HuffModel();
+		settings(format).accept(model);
+		model.initialize(input);
+		model.write(input, compressed, !format.equals("stored"));
+		assertUncompresses(data, compressed);
+	}
+
+	@ParameterizedTest(name = "{0} {1}")
+	@MethodSource("formats")
+	void roundTripsFromStream(String format, String name, byte[] data) throws IOException{
+		File input = write("in", data);
+		File compressed = new File(dir, "in.hf");
+		HuffModel model = new HuffModel();
+		settings(format).accept(model);
+		model.initialize(new FileInputStream(input));
+		model.write(new FileInputStream(input), compressed, !format.equals("stored"));
+		assertUncompresses(data, compressed);
+	}
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource("HuffTestData#all")
+	void roundTripsInMemory(String name, byte[] data) throws IOException{
+		HuffModel model = new HuffModel();
+		model.setMaxCodeLength(12);
+		ByteBuffer compressed = ByteBuffer.allocate((int) model.maxCompressedSize(data.length));
+		int n = model.compress(ByteBuffer.wrap(data), compressed);
+		assertEquals(n, compressed.position());
+		compressed.flip();
+		ByteBuffer uncompressed = ByteBuffer.allocateDirect(data.length);
+		assertEquals(data.length, new HuffModel().decompress(compressed, uncompressed));
+		uncompressed.flip();
+		assertEquals(ByteBuffer.wrap(data), uncompressed);
+	}
+
+	@Test
+	void refusesToGrowUnlessForced() throws IOException{
+		File input = write("in", HuffTestData.random(10000));
+		HuffModel model = new HuffModel();
+		model.initialize(input);
+		assertThrows(IOException.class, () -> model.write(input, new File(dir, "in.hf"), false));
+	}
+
+	@Test
+	void rejectsBadMagicNumber(){
+		byte[] bad = { 1, 2, 3, 4, 5, 6, 7, 8 };
+		assertThrows(IOException.class,
+				() -> new HuffModel().uncompress(new ByteArrayInputStream(bad), new ByteArrayOutputStream()));
+		assertThrows(IOException.class,
+				() -> new HuffModel().decompress(ByteBuffer.wrap(bad), ByteBuffer.allocate(64)));
+	}
+
+	@Test
+	void rejectsTruncatedCodes() throws IOException{
+		byte[] data = HuffTestData.text();
+		HuffModel model = new HuffModel();
+		ByteBuffer compressed = ByteBuffer.allocate((int) model.maxCompressedSize(data.length));
+		model.compress(ByteBuffer.wrap(data), compressed);
+		compressed.flip().limit(compressed.limit() / 2);
+		assertThrows(IOException.class, () -> new HuffModel().decompress(compressed, ByteBuffer.allocate(data.length)));
+	}
+
+	private File write(String name, byte[] data) throws IOException{
+		File file = new File(dir, name);
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	private void assertUncompresses(byte[] data, File compressed) throws IOException{
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		new HuffModel().uncompress(new FileInputStream(compressed), stream);
+		assertArrayEquals(data, stream.toByteArray(), "stream");
+
+		File uncompressed = new File(dir, "in.unhf");
+		new HuffModel().uncompress(compressed, uncompressed);
+		assertArrayEquals(data, Files.readAllBytes(uncompressed.toPath()), "mapped file");
+
+		ByteBuffer memory = ByteBuffer.allocate(data.length);
+		new HuffModel().decompress(ByteBuffer.wrap(Files.readAllBytes(compressed.toPath())), memory);
+		assertTrue(memory.position() == data.length && ByteBuffer.wrap(data).equals(memory.flip()), "memory");
+	}
+}
@@ -0,0 +1,72 @@
+import java.util.Arrays;
+import java.util.Random;
+/**
+ * Inputs shared by the round-trip tests: the edge cases of an empty input,
+ * one byte and a single symbol repeated, and data that compresses well,
+ * barely or not at all.
+ * @author Zifan Yang
+ *
+ */
+final class HuffTestData {
+	private HuffTestData(){
+	}
+
+	static byte[] empty(){
+		return new byte[0];
+	}
+
+	static byte[] oneByte(){
+		return new byte[] { 'x' };
+	}
+
+	static byte[] singleSymbol(){
+		byte[] data = new byte[5000];
+		Arrays.fill(data, (byte) 'a');
+		return data;
+	}
+
+	static byte[] text(){
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 150000){
+			sb.append("2026-10-18 INFO request id=").append(random.nextInt(100000))
+				.append(" took ").append(random.nextInt(999)).append("ms\n");
+		}
+		return sb.toString().getBytes();
+	}
+
+	static byte[] random(int length){
+		byte[] data = new byte[length];
+		new Random(7).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * 16-bit samples of odd length, so the last symbol is padded
+	 */
+	static byte[] samples(){
+		Random random = new Random(5);
+		byte[] data = new byte[120001];
+		for (int i = 0; i + 1 < data.length; i += 2){
+			int sample = (int) Math.abs(random.nextGaussian() * 3000);
+			data[i] = (byte) (sample >> 8);
+			data[i + 1] = (byte) sample;
+		}
+		data[data.length - 1] = 17;
+		return data;
+	}
+
+	/**
+	 * @return every input, named for test reports
+	 */
+	static Object[][] all(){
+		return new Object[][] {
+			{ "empty", empty() },
+			{ "one byte", oneByte() },
+			{ "single symbol", singleSymbol() },
+			{ "text", text() },
+			{ "random", random(100000) },
+			{ "samples", samples() },
+		};
+	}
+}
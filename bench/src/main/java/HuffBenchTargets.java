@@ -0,0 +1,131 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * The benchmarked hot paths, called directly on the Huff classes. See
+ * huffbench.HuffTargets for why this class is in the unnamed package.
+ * @author Zifan Yang
+ *
+ */
+public class HuffBenchTargets implements huffbench.HuffTargets
+{
+    private byte[] myData;
+    private byte[] myCompressed;   // legacy tree header, codes and PSEUDO_EOF
+    private CharCounter myCount;
+    private HuffEncoder myEncoder;
+    private ByteBuffer myBuffer;
+    private byte[] myBlock;        // single-stream block payload
+    private byte[] myInterleaved;  // interleaved block payload
+    private byte[] myOutput;
+
+    public void setup(byte[] data) throws IOException {
+        myData = data;
+        myBuffer = ByteBuffer.allocateDirect(data.length);
+        myBuffer.put(data).flip();
+        myCount = new CharCounter();
+        myCount.countAll(new ByteArrayInputStream(data));
+        TreeMaker tree = tree();
+        myEncoder = new HuffEncoder();
+        myEncoder.makeTable(tree);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+        BitOutputStream out = new BitOutputStream(bytes);
+        new HuffHeader().writeHeader(tree.root, out);
+        for (byte b : data) {
+            myEncoder.writeCode(b & 0xff, out);
+        }
+        myEncoder.writeCode(IHuffConstants.PSEUDO_EOF, out);
+        out.close();
+        myCompressed = bytes.toByteArray();
+        HuffBlockCompressor blocks = new HuffBlockCompressor();
+        myBlock = blocks.compressBlock(ByteBuffer.wrap(data));
+        blocks.setInterleaved(true);
+        myInterleaved = blocks.compressBlock(ByteBuffer.wrap(data));
+        myOutput = new byte[data.length];
+    }
+
+    /**
+     * Returns a TreeMaker holding a node for each counted chunk and PSEUDO_EOF
+     */
+    private TreeMaker tree() {
+        TreeMaker tree = new TreeMaker();
+        for (int i = 0; i < IHuffConstants.ALPH_SIZE; i++) {
+            if (myCount.getCount(i) > 0) {
+                tree.addNode(i, myCount.getCount(i));
+            }
+        }
+        tree.addNode(IHuffConstants.PSEUDO_EOF, 1);
+        return tree;
+    }
+
+    public long writeFixed() throws IOException {
+        BitOutputStream out = new BitOutputStream(OutputStream.nullOutputStream());
+        for (byte b : myData) {
+            out.write(IHuffConstants.BITS_PER_WORD, b & 0xff);
+        }
+        out.close();
+        return myData.length;
+    }
+
+    public long writeCodes() throws IOException {
+        BitOutputStream out = new BitOutputStream(OutputStream.nullOutputStream());
+        long bits = 0;
+        for (byte b : myData) {
+            myEncoder.writeCode(b & 0xff, out);
+            bits += myEncoder.getCodeLength(b & 0xff);
+        }
+        out.close();
+        return bits;
+    }
+
+    public long readFixed() throws IOException {
+        BitInputStream in = new BitInputStream(new ByteArrayInputStream(myData));
+        long sum = 0;
+        int value;
+        while ((value = in.read(IHuffConstants.BITS_PER_WORD)) != -1) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    public long countStream() throws IOException {
+        return new CharCounter().countAll(new ByteArrayInputStream(myData));
+    }
+
+    public long countBuffer() throws IOException {
+        return new CharCounter().countAll(myBuffer);
+    }
+
+    public long makeTable() {
+        HuffEncoder encoder = new HuffEncoder();
+        encoder.makeTable(tree());
+        return encoder.getCodeLength(IHuffConstants.PSEUDO_EOF);
+    }
+
+    public long decodeTree() throws IOException {
+        return decode(new HuffDecoder());
+    }
+
+    public long decodeTable() throws IOException {
+        return decode(new HuffTableDecoder());
+    }
+
+    public long decodeBlock() throws IOException {
+        HuffBlockCompressor.decompressBlock(ByteBuffer.wrap(myBlock), myOutput, 0, myOutput.length);
+        return myOutput[myOutput.length - 1];
+    }
+
+    public long decodeBlockInterleaved() throws IOException {
+        HuffBlockCompressor.decompressBlock(ByteBuffer.wrap(myInterleaved), myOutput, 0, myOutput.length);
+        return myOutput[myOutput.length - 1];
+    }
+
+    private long decode(IHuffDecoder decoder) throws IOException {
+        BitInputStream input = new BitInputStream(new ByteArrayInputStream(myCompressed));
+        TreeMaker tree = new TreeMaker();
+        tree.root = new HuffHeader().readHeader(input);
+        decoder.initialize(tree);
+        decoder.doDecode(input, new BitOutputStream(OutputStream.nullOutputStream()));
+        return myCompressed.length;
+    }
+}
@@ -0,0 +1,32 @@
+package huffbench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * BitOutputStream.write and BitInputStream.read a byte at a time, and
+ * BitOutputStream.writeLong with the Huffman codes of the data.
+ * @author Zifan Yang
+ *
+ */
+public class BitStreamBench extends HuffState
+{
+    @Benchmark
+    public long writeFixed() throws IOException
+    {
+        return targets.writeFixed();
+    }
+
+    @Benchmark
+    public long writeCodes() throws IOException
+    {
+        return targets.writeCodes();
+    }
+
+    @Benchmark
+    public long readFixed() throws IOException
+    {
+        return targets.readFixed();
+    }
+}
@@ -0,0 +1,25 @@
+package huffbench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * CharCounter.countAll from a stream and from a direct buffer.
+ * @author Zifan Yang
+ *
+ */
+public class CharCounterBench extends HuffState
+{
+    @Benchmark
+    public long countStream() throws IOException
+    {
+        return targets.countStream();
+    }
+
+    @Benchmark
+    public long countBuffer() throws IOException
+    {
+        return targets.countBuffer();
+    }
+}
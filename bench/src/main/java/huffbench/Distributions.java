@@ -0,0 +1,85 @@
+package huffbench;
+
+import java.util.Random;
+
+/**
+ * Synthetic data sets with different byte distributions. The data is
+ * generated from a fixed seed so every run measures the same bytes.
+ * <UL>
+ * <LI>uniform: random bytes, nothing to compress
+ * <LI>skewed: geometric distribution, a few bytes are most of the data
+ * <LI>text: words of an English-like vocabulary with Zipf frequencies
+ * <LI>single: one byte repeated
+ * </UL>
+ * @author Zifan Yang
+ *
+ */
+public class Distributions
+{
+    private static final String[] WORDS = {
+        "the", "of", "and", "to", "in", "a", "is", "that", "for", "it",
+        "as", "was", "with", "be", "by", "on", "not", "he", "this", "are",
+        "or", "his", "from", "at", "which", "but", "have", "an", "had", "they",
+        "you", "were", "their", "one", "all", "we", "can", "her", "has", "there",
+        "been", "if", "more", "when", "will", "would", "who", "so", "no", "Huffman",
+        "compression", "encoding", "tree", "bits", "stream", "table", "file", "code",
+    };
+
+    /**
+     * Generate size bytes of the named distribution.
+     * @param name is uniform, skewed, text or single
+     * @param size is the number of bytes generated
+     * @return the data
+     */
+    public static byte[] generate(String name, int size)
+    {
+        Random random = new Random(20041017L);
+        byte[] data = new byte[size];
+        switch (name) {
+        case "uniform":
+            random.nextBytes(data);
+            break;
+        case "skewed":
+            for (int i = 0; i < size; i++) {
+                double u = 1.0 - random.nextDouble();
+                data[i] = (byte) Math.min(255, (int) (-Math.log(u) * 4));
+            }
+            break;
+        case "text":
+            text(random, data);
+            break;
+        case "single":
+            java.util.Arrays.fill(data, (byte) 'a');
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown distribution " + name);
+        }
+        return data;
+    }
+
+    /**
+     * Fill data with words picked with probability proportional to 1/rank
+     */
+    private static void text(Random random, byte[] data)
+    {
+        double[] cumulative = new double[WORDS.length];
+        double total = 0;
+        for (int i = 0; i < WORDS.length; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        int n = 0;
+        int line = 0;
+        while (n < data.length) {
+            double pick = random.nextDouble() * total;
+            int word = 0;
+            while (cumulative[word] < pick) {
+                word++;
+            }
+            String s = WORDS[word] + (++line % 12 == 0 ? ".\n" : " ");
+            for (int i = 0; i < s.length() && n < data.length; i++) {
+                data[n++] = (byte) s.charAt(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package huffbench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * HuffDecoder.doDecode and HuffTableDecoder.doDecode on the same
+ * compressed data, including reading the header. The block benchmarks
+ * compare a block payload coded as one stream with one whose codes are
+ * split across interleaved streams.
+ * @author Zifan Yang
+ *
+ */
+public class HuffDecoderBench extends HuffState
+{
+    @Benchmark
+    public long decodeTree() throws IOException
+    {
+        return targets.decodeTree();
+    }
+
+    @Benchmark
+    public long decodeTable() throws IOException
+    {
+        return targets.decodeTable();
+    }
+
+    @Benchmark
+    public long decodeBlock() throws IOException
+    {
+        return targets.decodeBlock();
+    }
+
+    @Benchmark
+    public long decodeBlockInterleaved() throws IOException
+    {
+        return targets.decodeBlockInterleaved();
+    }
+}
@@ -0,0 +1,18 @@
+package huffbench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * HuffEncoder.makeTable from the counts of the data. The cost does not
+ * depend on size, only on the number of different bytes.
+ * @author Zifan Yang
+ *
+ */
+public class HuffEncoderBench extends HuffState
+{
+    @Benchmark
+    public long makeTable()
+    {
+        return targets.makeTable();
+    }
+}
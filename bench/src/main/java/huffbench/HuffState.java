@@ -0,0 +1,38 @@
+package huffbench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Settings and data shared by all the benchmarks. Each operation works on
+ * the whole data set of size bytes, so with the default size of 1 MB the
+ * ops/s are MB/s and the gc.alloc.rate.norm of the GC profiler divided by
+ * size is the allocation per byte.
+ * @author Zifan Yang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class HuffState
+{
+    @Param({"uniform", "skewed", "text", "single"})
+    public String distribution;
+
+    @Param({"1048576"})
+    public int size;
+
+    protected HuffTargets targets;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        targets = HuffTargets.load();
+        targets.setup(Distributions.generate(distribution, size));
+    }
+}
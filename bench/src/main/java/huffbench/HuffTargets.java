@@ -0,0 +1,65 @@
+package huffbench;
+
+import java.io.IOException;
+
+/**
+ * The hot paths measured by the benchmarks. The Huff classes live in the
+ * unnamed package, which code in a named package such as this one cannot
+ * refer to, and JMH refuses benchmarks in the unnamed package. The
+ * benchmarks therefore call the Huff classes through this interface, which
+ * is implemented by HuffBenchTargets in the unnamed package. Every call
+ * works on the whole data set, so the cost of the interface call itself
+ * does not show in the results.
+ * @author Zifan Yang
+ *
+ */
+public interface HuffTargets
+{
+    /**
+     * Count the data and build its code table and compressed form.
+     * @param data is the uncompressed data the other methods work on
+     */
+    void setup(byte[] data) throws IOException;
+
+    /** Write every byte with BitOutputStream.write(8, byte). */
+    long writeFixed() throws IOException;
+
+    /** Write the code of every byte with HuffEncoder.writeCode. */
+    long writeCodes() throws IOException;
+
+    /** Read the data back with BitInputStream.read(8). */
+    long readFixed() throws IOException;
+
+    /** Count the data with CharCounter.countAll(InputStream). */
+    long countStream() throws IOException;
+
+    /** Count the data with CharCounter.countAll(ByteBuffer). */
+    long countBuffer() throws IOException;
+
+    /** Build the tree and the code table from the counts. */
+    long makeTable();
+
+    /** Uncompress with the bit-at-a-time HuffDecoder. */
+    long decodeTree() throws IOException;
+
+    /** Uncompress with the table-driven HuffTableDecoder. */
+    long decodeTable() throws IOException;
+
+    /** Uncompress the data compressed as one block with a single stream. */
+    long decodeBlock() throws IOException;
+
+    /** Uncompress the data compressed as one block with interleaved streams. */
+    long decodeBlockInterleaved() throws IOException;
+
+    /**
+     * Returns the implementation in the unnamed package.
+     */
+    static HuffTargets load()
+    {
+        try {
+            return (HuffTargets) Class.forName("HuffBenchTargets").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("HuffBenchTargets is missing from the class path", e);
+        }
+    }
+}